@@ -1,4 +1,261 @@
 package cn.wanxh.demo;
 
-public class NettyClient {
+import cn.wanxh.demo.codec.RpcClientHandler;
+import cn.wanxh.demo.codec.RpcDecoder;
+import cn.wanxh.demo.codec.RpcEncoder;
+import cn.wanxh.demo.codec.RpcMessageDecoder;
+import cn.wanxh.demo.codec.SerializerRegistry;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 00:10
+ * @Author: 阿左不是蜗牛
+ * @Description: RPC 客户端：所有连接共享一个 EventLoopGroup，每个服务端地址维护固定数量的长连接，
+ *  每次调用选择未完成请求最少的连接发送（同一连接上按 requestId 多路复用），结果以 CompletableFuture 返回。
+ *  调用超时由一个共享的时间轮（HashedWheelTimer）触发，不为每次调用创建定时线程或定时任务。
+ *  连接在第一次调用时建立，断开后在下一次选中时重连；连接失败后按指数退避重试，服务端不可用时调用直接失败，不会每次调用都发起连接。
+ */
+public class NettyClient implements AutoCloseable {
+
+    public static final int DEFAULT_CONNECTIONS_PER_ENDPOINT = 4;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+
+    // 连接失败后重连的退避时间，每连续失败一次翻倍
+    static final long INITIAL_RECONNECT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long MAX_RECONNECT_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final SerializerRegistry registry;
+    private final int connectionsPerEndpoint;
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+    private final HashedWheelTimer timer;
+    private final ConcurrentMap<InetSocketAddress, EndpointPool> pools = new ConcurrentHashMap<>();
+
+    public NettyClient() {
+        this(SerializerRegistry.defaults(), DEFAULT_CONNECTIONS_PER_ENDPOINT, 0);
+    }
+
+    /**
+     * @param eventLoopThreads EventLoop 线程数，0 表示使用 Netty 的默认值
+     */
+    public NettyClient(SerializerRegistry registry, int connectionsPerEndpoint, int eventLoopThreads) {
+        if (connectionsPerEndpoint <= 0) {
+            throw new IllegalArgumentException("connectionsPerEndpoint: " + connectionsPerEndpoint + " (expected: > 0)");
+        }
+        this.registry = registry;
+        this.connectionsPerEndpoint = connectionsPerEndpoint;
+        this.group = new NioEventLoopGroup(eventLoopThreads);
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true);
+        // 超时精度 10ms 足够，时间轮只有一个线程
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("nettyClientTimer", true), 10, TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<Object> call(String host, int port, Object request) {
+        return call(new InetSocketAddress(host, port), request, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 异步调用，可以在任意线程调用；连接失败、连接断开、超时都以异常完成
+     */
+    public CompletableFuture<Object> call(InetSocketAddress endpoint, Object request, long timeout, TimeUnit unit) {
+        Connection connection = pools.computeIfAbsent(endpoint, EndpointPool::new).select();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        if (connection == null) {
+            result.completeExceptionally(new ConnectException("no connection to " + endpoint + ", reconnecting with backoff"));
+            return result;
+        }
+        if (connection.connectFuture.isSuccess()) {
+            return connection.handler.call(request, timer, timeout, unit);
+        }
+        // 连接还在建立中，建立后再发送；超时从调用时开始计时，建立连接的时间也算在内
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Timeout connectTimeout = timeout > 0
+                ? timer.newTimeout(t -> result.completeExceptionally(new TimeoutException("connect to " + endpoint + " timed out")), timeout, unit)
+                : null;
+        connection.waiting.incrementAndGet();
+        connection.connectFuture.addListener((ChannelFutureListener) f -> {
+            connection.waiting.decrementAndGet();
+            // cancel 返回 false 说明已经超时
+            if (connectTimeout != null && !connectTimeout.cancel()) {
+                return;
+            }
+            if (!f.isSuccess()) {
+                result.completeExceptionally(f.cause());
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (timeout > 0 && remaining <= 0) {
+                result.completeExceptionally(new TimeoutException("connect to " + endpoint + " timed out"));
+                return;
+            }
+            connection.handler.call(request, timer, timeout > 0 ? remaining : 0, TimeUnit.NANOSECONDS).whenComplete((value, cause) -> {
+                if (cause != null) {
+                    result.completeExceptionally(cause);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * 某个服务端地址上所有连接的未完成请求数之和
+     */
+    public int pendingRequests(InetSocketAddress endpoint) {
+        EndpointPool pool = pools.get(endpoint);
+        return pool == null ? 0 : pool.pendingRequests();
+    }
+
+    @Override
+    public void close() {
+        timer.stop();
+        group.shutdownGracefully();
+    }
+
+    /**
+     * @param attempt 这个地址上连续失败的连接次数，决定失败后多久才能重连
+     */
+    private Connection connect(InetSocketAddress endpoint, int attempt) {
+        RpcClientHandler handler = new RpcClientHandler();
+        ChannelFuture connectFuture = bootstrap.clone()
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new RpcDecoder(), new RpcMessageDecoder(registry), new RpcEncoder(registry), handler);
+                    }
+                })
+                .connect(endpoint);
+        return new Connection(connectFuture, handler, attempt);
+    }
+
+    private static final class Connection {
+        final ChannelFuture connectFuture;
+        final RpcClientHandler handler;
+        final int attempt;
+        // 连接失败时，在这个时间之后才重连；从发起连接时算起
+        final long retryAtNanos;
+        // 等待连接建立后再发送的调用数，RpcClientHandler 还看不到这些请求
+        final AtomicInteger waiting = new AtomicInteger();
+
+        Connection(ChannelFuture connectFuture, RpcClientHandler handler, int attempt) {
+            this.connectFuture = connectFuture;
+            this.handler = handler;
+            this.attempt = attempt;
+            this.retryAtNanos = System.nanoTime() + Math.min(MAX_RECONNECT_BACKOFF_NANOS, INITIAL_RECONNECT_BACKOFF_NANOS << Math.min(attempt, 16));
+        }
+
+        /**
+         * 连接失败或已经断开，需要重连
+         */
+        boolean isBroken() {
+            return connectFuture.isDone() && !connectFuture.channel().isActive();
+        }
+
+        /**
+         * 连接建立失败，还在退避时间内；建立成功后断开的连接可以立即重连
+         */
+        boolean isBackingOff() {
+            return !connectFuture.isSuccess() && System.nanoTime() - retryAtNanos < 0;
+        }
+
+        int pendingRequests() {
+            return handler.pendingRequests() + waiting.get();
+        }
+    }
+
+    /**
+     * 一个服务端地址的固定大小连接池
+     */
+    private final class EndpointPool {
+        private final InetSocketAddress endpoint;
+        private final Connection[] connections;
+
+        EndpointPool(InetSocketAddress endpoint) {
+            this.endpoint = endpoint;
+            this.connections = new Connection[connectionsPerEndpoint];
+        }
+
+        /**
+         * 优先选择已建立的连接中未完成请求最少的一个，没有已建立的连接时才选择建立中的连接（包括等待建立的调用数），
+         * 遇到未建立或已断开的连接时先（重新）建立，所以第一次调用后所有连接都在建立中；
+         * 连接失败后在退避时间内不重连，所有连接都在退避时返回 null
+         * 读取 connections 不加锁，数组元素的可见性由替换时的 synchronized 和 Connection 的 final 字段保证，
+         * 偶尔读到旧值只会选到一个稍忙的连接
+         */
+        Connection select() {
+            Connection bestActive = null;
+            int bestActivePending = Integer.MAX_VALUE;
+            Connection bestConnecting = null;
+            int bestConnectingPending = Integer.MAX_VALUE;
+            for (int i = 0; i < connections.length; i++) {
+                Connection connection = connections[i];
+                if (connection == null || connection.isBroken()) {
+                    if (connection != null && connection.isBackingOff()) {
+                        continue;
+                    }
+                    connection = replace(i, connection);
+                }
+                int pending = connection.pendingRequests();
+                if (connection.connectFuture.isSuccess()) {
+                    if (pending < bestActivePending) {
+                        bestActive = connection;
+                        bestActivePending = pending;
+                    }
+                } else if (pending < bestConnectingPending) {
+                    bestConnecting = connection;
+                    bestConnectingPending = pending;
+                }
+            }
+            return bestActive != null ? bestActive : bestConnecting;
+        }
+
+        private synchronized Connection replace(int index, Connection broken) {
+            Connection current = connections[index];
+            // 其他线程已经重连
+            if (current != broken) {
+                return current;
+            }
+            // 上一个连接建立失败时退避时间加倍，建立成功后断开的从头开始
+            int attempt = broken != null && !broken.connectFuture.isSuccess() ? broken.attempt + 1 : 0;
+            Connection connection = connect(endpoint, attempt);
+            connections[index] = connection;
+            return connection;
+        }
+
+        int pendingRequests() {
+            int sum = 0;
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    sum += connection.pendingRequests();
+                }
+            }
+            return sum;
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package cn.wanxh.demo;
+
+import cn.wanxh.demo.codec.RpcClientHandler;
+import cn.wanxh.demo.codec.RpcDecoder;
+import cn.wanxh.demo.codec.RpcEncoder;
+import cn.wanxh.demo.codec.RpcMessageDecoder;
+import cn.wanxh.demo.codec.RpcServerHandler;
+import cn.wanxh.demo.codec.SerializerRegistry;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 00:30
+ * @Author: 阿左不是蜗牛
+ * @Description: NettyClient 与每次调用新建连接的对比（calls/s）：
+ *  1. 每次调用新建 EventLoopGroup 和连接，调用完关闭（HttpClient.connect 的方式）；
+ *  2. 共享 EventLoopGroup，但每次调用新建连接；
+ *  3. NettyClient 连接池，调用线程同步等待结果；
+ *  4. NettyClient 连接池，异步调用，同时最多 WINDOW 个未完成的请求。
+ *  服务端是回显请求的 RPC 服务，业务在 EventLoop 中直接执行
+ */
+public class NettyClientBenchmark {
+
+    private static final int PORT = 10501;
+    private static final int THREADS = 8;
+    private static final int WINDOW = 256;
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    public static void main(String[] args) throws Exception {
+        SerializerRegistry registry = SerializerRegistry.defaults();
+        RpcServerHandler serverHandler = new RpcServerHandler(request -> request, Runnable::run);
+        EventLoopGroup serverGroup = new NioEventLoopGroup(2);
+        Channel server = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new RpcDecoder(), new RpcMessageDecoder(registry), new RpcEncoder(registry), serverHandler);
+                    }
+                })
+                .bind(PORT).sync().channel();
+        InetSocketAddress endpoint = new InetSocketAddress("127.0.0.1", PORT);
+
+        report("connection + group per call", runThreads(() -> {
+            EventLoopGroup group = new NioEventLoopGroup(1);
+            try{
+                callOnce(group, registry, endpoint);
+            }finally {
+                group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+            }
+        }));
+
+        EventLoopGroup shared = new NioEventLoopGroup(2);
+        report("connection per call, shared group", runThreads(() -> callOnce(shared, registry, endpoint)));
+        shared.shutdownGracefully().sync();
+
+        try (NettyClient client = new NettyClient(registry, NettyClient.DEFAULT_CONNECTIONS_PER_ENDPOINT, 2)) {
+            client.call(endpoint, "warm up", 3, TimeUnit.SECONDS).get();
+            report("NettyClient, " + THREADS + " blocking callers",
+                    runThreads(() -> client.call(endpoint, "ping", 3, TimeUnit.SECONDS).get()));
+            report("NettyClient, async window " + WINDOW, runAsync(client, endpoint));
+        }
+
+        server.close().sync();
+        serverGroup.shutdownGracefully().sync();
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    private static void callOnce(EventLoopGroup group, SerializerRegistry registry, InetSocketAddress endpoint) throws Exception {
+        RpcClientHandler handler = new RpcClientHandler();
+        Channel channel = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new RpcDecoder(), new RpcMessageDecoder(registry), new RpcEncoder(registry), handler);
+                    }
+                })
+                .connect(endpoint).sync().channel();
+        try{
+            handler.call("ping").get(3, TimeUnit.SECONDS);
+        }finally {
+            channel.close().sync();
+        }
+    }
+
+    /**
+     * THREADS 个线程在 DURATION_NANOS 内反复同步调用
+     * @return 完成的调用数
+     */
+    private static long runThreads(Call call) throws InterruptedException {
+        AtomicLong calls = new AtomicLong();
+        long deadline = System.nanoTime() + DURATION_NANOS;
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(() -> {
+                try{
+                    while (System.nanoTime() < deadline) {
+                        call.run();
+                        calls.incrementAndGet();
+                    }
+                }catch(Exception e){
+                    e.printStackTrace();
+                }finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        return calls.get();
+    }
+
+    private static long runAsync(NettyClient client, InetSocketAddress endpoint) throws InterruptedException {
+        Semaphore window = new Semaphore(WINDOW);
+        AtomicLong calls = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        long deadline = System.nanoTime() + DURATION_NANOS;
+        while (System.nanoTime() < deadline) {
+            window.acquire();
+            client.call(endpoint, "ping", 3, TimeUnit.SECONDS).whenComplete((result, cause) -> {
+                if (cause != null) {
+                    failures.incrementAndGet();
+                } else {
+                    calls.incrementAndGet();
+                }
+                window.release();
+            });
+        }
+        window.acquire(WINDOW);
+        if (failures.get() > 0) {
+            System.out.println("  failed calls: " + failures.get());
+        }
+        return calls.get();
+    }
+
+    private static void report(String label, long calls) {
+        System.out.printf("%-36s %10.0f calls/s%n", label, calls / (DURATION_NANOS / 1e9));
+    }
+}
@@ -0,0 +1,235 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 21:30
+ * @Author: 阿左不是蜗牛
+ * @Description: 紧凑的二进制序列化：1 字节类型标记 + 值
+ *  支持 null、Boolean、Integer、Long（zigzag 变长编码）、Double、String（UTF-8）、byte[]、List、Map，
+ *  其他类型抛出 NotSerializableException。
+ *  字符串直接用 ByteBufUtil.writeUtf8 写入，长度字段先按 UTF-8 最大长度预留变长编码的宽度，写完后回填。
+ */
+public class BinarySerializeService implements SerializeService {
+
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte INT = 3;
+    static final byte LONG = 4;
+    static final byte DOUBLE = 5;
+    static final byte STRING = 6;
+    static final byte BYTES = 7;
+    static final byte LIST = 8;
+    static final byte MAP = 9;
+
+    // 嵌套的最大深度，防止恶意的帧导致栈溢出
+    private static final int MAX_DEPTH = 64;
+
+    @Override
+    public byte type() {
+        return ProtocolConstants.SERIALIZE_BINARY;
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) throws IOException {
+        write(obj, out, 0);
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in) throws IOException {
+        return read(in, 0);
+    }
+
+    private static void write(Object obj, ByteBuf out, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new NotSerializableException("nesting deeper than " + MAX_DEPTH);
+        }
+        if (obj == null) {
+            out.writeByte(NULL);
+        } else if (obj instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) obj, out);
+        } else if (obj instanceof Integer) {
+            out.writeByte(INT);
+            writeVarLong(out, zigzag((Integer) obj));
+        } else if (obj instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, zigzag((Long) obj));
+        } else if (obj instanceof Boolean) {
+            out.writeByte((Boolean) obj ? TRUE : FALSE);
+        } else if (obj instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) obj);
+        } else if (obj instanceof byte[]) {
+            byte[] bytes = (byte[]) obj;
+            out.writeByte(BYTES);
+            writeVarLong(out, bytes.length);
+            out.writeBytes(bytes);
+        } else if (obj instanceof List) {
+            List<?> list = (List<?>) obj;
+            out.writeByte(LIST);
+            writeVarLong(out, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                write(list.get(i), out, depth + 1);
+            }
+        } else if (obj instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) obj;
+            out.writeByte(MAP);
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(entry.getKey(), out, depth + 1);
+                write(entry.getValue(), out, depth + 1);
+            }
+        } else {
+            throw new NotSerializableException(obj.getClass().getName());
+        }
+    }
+
+    private static Object read(ByteBuf in, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new StreamCorruptedException("nesting deeper than " + MAX_DEPTH);
+        }
+        byte tag = readTag(in);
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return (int) unzigzag(readVarLong(in));
+            case LONG:
+                return unzigzag(readVarLong(in));
+            case DOUBLE:
+                checkReadable(in, 8);
+                return in.readDouble();
+            case STRING: {
+                int length = readLength(in, 1);
+                String s = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+                in.skipBytes(length);
+                return s;
+            }
+            case BYTES: {
+                byte[] bytes = new byte[readLength(in, 1)];
+                in.readBytes(bytes);
+                return bytes;
+            }
+            case LIST: {
+                int size = readLength(in, 1);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in, depth + 1));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = readLength(in, 2);
+                Map<Object, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    Object key = read(in, depth + 1);
+                    map.put(key, read(in, depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw new StreamCorruptedException("unknown tag: " + tag);
+        }
+    }
+
+    private static byte readTag(ByteBuf in) throws IOException {
+        checkReadable(in, 1);
+        return in.readByte();
+    }
+
+    /**
+     * 读出长度并检查剩余字节是否足够（每个元素至少 minBytesPerElement 字节），避免按伪造的长度分配内存
+     */
+    private static int readLength(ByteBuf in, int minBytesPerElement) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length * minBytesPerElement > in.readableBytes()) {
+            throw new StreamCorruptedException("length " + length + " exceeds " + in.readableBytes() + " readable bytes");
+        }
+        return (int) length;
+    }
+
+    private static void checkReadable(ByteBuf in, int bytes) throws IOException {
+        if (in.readableBytes() < bytes) {
+            throw new StreamCorruptedException("truncated: need " + bytes + " bytes, " + in.readableBytes() + " readable");
+        }
+    }
+
+    private static void writeString(String s, ByteBuf out) {
+        // 先按最大长度预留长度字段的宽度，写完后回填实际长度
+        int width = varLongSize(ByteBufUtil.utf8MaxBytes(s));
+        int lengthIndex = out.writerIndex();
+        out.writeZero(width);
+        int length = ByteBufUtil.writeUtf8(out, s);
+        setPaddedVarInt(out, lengthIndex, length, width);
+    }
+
+    /**
+     * 按固定宽度写入变长编码（高位补 0x80），解码方式与普通的变长编码相同
+     */
+    private static void setPaddedVarInt(ByteBuf out, int index, int value, int width) {
+        for (int i = 0; i < width - 1; i++) {
+            out.setByte(index + i, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.setByte(index + width - 1, value);
+    }
+
+    static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(ByteBuf in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readTag(in);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("malformed varint");
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public String toString() {
+        return "binary";
+    }
+}
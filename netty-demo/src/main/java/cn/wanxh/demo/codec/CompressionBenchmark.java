@@ -0,0 +1,74 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 23:20
+ * @Author: 阿左不是蜗牛
+ * @Description: 按帧压缩的效果：不同大小的类 JSON 数据（重复的字段名和相近的值）分别在不压缩和不同阈值下
+ *  经过 RpcEncoder -> RpcDecoder -> RpcMessageDecoder 往返，输出线上字节数、每帧耗时和 FrameCompressor 的统计
+ */
+public class CompressionBenchmark {
+
+    private static final int[] RECORDS = {2, 16, 128, 1024};
+    private static final int FRAMES = 400;
+
+    public static void main(String[] args) throws Exception {
+        SerializerRegistry registry = SerializerRegistry.defaults();
+        List<Object> payloads = new ArrayList<>();
+        for (int records : RECORDS) {
+            payloads.add(samplePayload(records));
+        }
+        for (int threshold : new int[]{FrameCompressor.DISABLED, 16 * 1024, 1024, 64}) {
+            for (int round = 0; round < 3; round++) {
+                FrameCompressor compressor = new FrameCompressor(threshold);
+                EmbeddedChannel encoder = new EmbeddedChannel(new RpcEncoder(registry, ProtocolConstants.DEFAULT_MAX_FRAME_LENGTH, compressor));
+                EmbeddedChannel decoder = new EmbeddedChannel(new RpcDecoder(),
+                        new RpcMessageDecoder(registry, ProtocolConstants.DEFAULT_MAX_FRAME_LENGTH, compressor));
+                long wireBytes = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < FRAMES; i++) {
+                    Object payload = payloads.get(i % payloads.size());
+                    encoder.writeOutbound(RpcMessage.request(i, payload));
+                    ByteBuf frame = encoder.readOutbound();
+                    wireBytes += frame.readableBytes();
+                    decoder.writeInbound(frame);
+                    RpcMessage decoded = decoder.readInbound();
+                    if (round == 0 && !payload.equals(decoded.payload())) {
+                        throw new IllegalStateException("round trip mismatch for frame " + i);
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                if (round == 2) {
+                    System.out.printf("threshold %-10s %8.1f KB on the wire, %7.1f us/frame round trip%n  %s%n",
+                            threshold == FrameCompressor.DISABLED ? "disabled" : threshold + " B",
+                            wireBytes / 1024.0, elapsed / 1000.0 / FRAMES, compressor);
+                }
+            }
+        }
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    private static Object samplePayload(int records) {
+        List<Object> list = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("userId", 100000L + i);
+            record.put("userName", "user-" + i);
+            record.put("email", "user-" + i + "@example.com");
+            record.put("status", i % 3 == 0 ? "ACTIVE" : "INACTIVE");
+            record.put("roles", "read,write,admin".substring(0, 4 + (i % 3) * 6));
+            record.put("lastLoginTime", "2026-10-17T21:" + (10 + i % 50) + ":00Z");
+            list.add(record);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,128 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 23:40
+ * @Author: 阿左不是蜗牛
+ * @Description: ByteBuf 的 CRC32C（Castagnoli）校验和
+ *  JDK 9+ 通过反射使用 java.util.zip.CRC32C（有硬件指令的 intrinsic），
+ *  逐个传入 ByteBuf.nioBuffers() 返回的 NIO 缓冲区，不拷贝数据；
+ *  Java 8 上退化为纯 Java 的 slicing-by-8 实现，直接从 ByteBuf 按 long 读取
+ */
+final class Crc32c {
+
+    // Castagnoli 多项式（反射形式）
+    private static final int POLY = 0x82F63B78;
+
+    private static final int[][] TABLES = new int[8][256];
+
+    // java.util.zip.CRC32C 的构造方法和 Checksum.update(ByteBuffer)，Java 8 上为 null
+    private static final MethodHandle NEW_CRC32C;
+    private static final MethodHandle UPDATE_BYTE_BUFFER;
+
+    private static final FastThreadLocal<Checksum> CHECKSUM = new FastThreadLocal<Checksum>() {
+        @Override
+        protected Checksum initialValue() throws Exception {
+            try{
+                return (Checksum) NEW_CRC32C.invoke();
+            }catch(Throwable e){
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLES[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) {
+                int prev = TABLES[t - 1][i];
+                TABLES[t][i] = (prev >>> 8) ^ TABLES[0][prev & 0xFF];
+            }
+        }
+
+        MethodHandle newCrc32c = null;
+        MethodHandle update = null;
+        if (!Boolean.getBoolean("cn.wanxh.crc32c.pureJava")) {
+            try{
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                Class<?> crc32c = Class.forName("java.util.zip.CRC32C");
+                newCrc32c = lookup.findConstructor(crc32c, MethodType.methodType(void.class));
+                update = lookup.findVirtual(Checksum.class, "update", MethodType.methodType(void.class, ByteBuffer.class));
+            }catch(ReflectiveOperationException e){
+                // Java 8
+                newCrc32c = null;
+                update = null;
+            }
+        }
+        NEW_CRC32C = newCrc32c;
+        UPDATE_BYTE_BUFFER = update;
+    }
+
+    private Crc32c() {
+    }
+
+    /**
+     * 是否使用 JDK 的 CRC32C
+     */
+    static boolean isIntrinsic() {
+        return UPDATE_BYTE_BUFFER != null;
+    }
+
+    /**
+     * buf 中 [index, index + length) 的 CRC32C，不移动读写指针
+     */
+    static int compute(ByteBuf buf, int index, int length) {
+        if (UPDATE_BYTE_BUFFER == null) {
+            return computePureJava(buf, index, length);
+        }
+        Checksum checksum = CHECKSUM.get();
+        checksum.reset();
+        try{
+            if (buf.nioBufferCount() == 1) {
+                UPDATE_BYTE_BUFFER.invokeExact(checksum, buf.internalNioBuffer(index, length));
+            } else {
+                for (ByteBuffer nioBuffer : buf.nioBuffers(index, length)) {
+                    UPDATE_BYTE_BUFFER.invokeExact(checksum, nioBuffer);
+                }
+            }
+        }catch(RuntimeException | Error e){
+            throw e;
+        }catch(Throwable e){
+            throw new IllegalStateException(e);
+        }
+        return (int) checksum.getValue();
+    }
+
+    static int computePureJava(ByteBuf buf, int index, int length) {
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        int crc = 0xFFFFFFFF;
+        int end = index + length;
+        for (; index + 8 <= end; index += 8) {
+            long value = buf.getLongLE(index);
+            int lo = (int) value ^ crc;
+            int hi = (int) (value >>> 32);
+            crc = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24]
+                    ^ t3[hi & 0xFF] ^ t2[(hi >>> 8) & 0xFF] ^ t1[(hi >>> 16) & 0xFF] ^ t0[hi >>> 24];
+        }
+        for (; index < end; index++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ buf.getByte(index)) & 0xFF];
+        }
+        return ~crc;
+    }
+}
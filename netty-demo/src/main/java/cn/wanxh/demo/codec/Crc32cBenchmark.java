@@ -0,0 +1,75 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 23:50
+ * @Author: 阿左不是蜗牛
+ * @Description: CRC32C 的吞吐：不同大小的堆内/堆外缓冲区上，分别用 JDK 的 CRC32C（JDK 9+）和纯 Java 的 slicing-by-8 计算，
+ *  输出每 GB 耗时（ms/GB）；开始前先确认两种实现的结果一致。加 -Dcn.wanxh.crc32c.pureJava=true 可以模拟 Java 8
+ */
+public class Crc32cBenchmark {
+
+    private static final int[] SIZES = {64, 1024, 16 * 1024, 1024 * 1024};
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 1_000_000_000L;
+    private static final double GB = 1024.0 * 1024 * 1024;
+
+    // 防止计算被 JIT 消除
+    static long sink;
+
+    public static void main(String[] args) {
+        System.out.println("intrinsic: " + Crc32c.isIntrinsic());
+        for (int size : SIZES) {
+            for (boolean direct : new boolean[]{false, true}) {
+                ByteBuf buf = direct ? Unpooled.directBuffer(size) : Unpooled.buffer(size);
+                byte[] bytes = new byte[size];
+                ThreadLocalRandom.current().nextBytes(bytes);
+                buf.writeBytes(bytes);
+                // 从非 0 下标开始，覆盖不对齐的情况
+                int index = size > 1 ? 1 : 0;
+                int length = size - index;
+                if (Crc32c.compute(buf, index, length) != Crc32c.computePureJava(buf, index, length)) {
+                    throw new IllegalStateException("crc mismatch for " + size + " bytes");
+                }
+
+                double intrinsic = Double.NaN;
+                double pureJava = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    if (Crc32c.isIntrinsic()) {
+                        intrinsic = run(buf, index, length, false);
+                    }
+                    pureJava = run(buf, index, length, true);
+                }
+                System.out.printf("%8d B %-6s jdk %8.1f ms/GB | pure java %8.1f ms/GB%n",
+                        size, direct ? "direct" : "heap", intrinsic, pureJava);
+                buf.release();
+            }
+        }
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    /**
+     * 在 ROUND_NANOS 内反复计算，返回每 GB 耗时（毫秒）
+     */
+    private static double run(ByteBuf buf, int index, int length, boolean pureJava) {
+        long bytes = 0;
+        long acc = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 64; i++) {
+                acc += pureJava ? Crc32c.computePureJava(buf, index, length) : Crc32c.compute(buf, index, length);
+            }
+            bytes += 64L * length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+        sink += acc;
+        return elapsed / 1e6 / (bytes / GB);
+    }
+}
@@ -8,15 +8,41 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.FixedLengthFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 
 /**
  * @program: netty-wanxh
  * @Date: 2022/7/15 23:47
  * @Author: 阿左不是蜗牛
- * @Description: TODO
+ * @Description: 10 字节定长请求的回显服务
+ *  默认在 pipeline 最前面加 FlushConsolidationHandler：一次读循环中处理器的 flush 被合并，
+ *  在 channelReadComplete 或累计 flushAfterMessages 次后才真正刷出，一个 write 系统调用发出多条响应；
+ *  lowLatency 模式不合并，每条响应立即刷出
  */
 public class EchoServer {
 
+    // 合并 flush 时，一次读循环中最多累计多少次 flush 后强制刷出
+    public static final int DEFAULT_FLUSH_AFTER_MESSAGES = 256;
+
+    private final boolean lowLatency;
+    private final int flushAfterMessages;
+
+    public EchoServer() {
+        this(false, DEFAULT_FLUSH_AFTER_MESSAGES);
+    }
+
+    /**
+     * @param lowLatency 为 true 时每条响应立即刷出，不合并
+     * @param flushAfterMessages 合并 flush 时累计多少次后强制刷出
+     */
+    public EchoServer(boolean lowLatency, int flushAfterMessages) {
+        if (flushAfterMessages <= 0) {
+            throw new IllegalArgumentException("flushAfterMessages: " + flushAfterMessages + " (expected: > 0)");
+        }
+        this.lowLatency = lowLatency;
+        this.flushAfterMessages = flushAfterMessages;
+    }
+
     public void startEchoServer(int port) throws Exception {
 
         EventLoopGroup bossGroup = new NioEventLoopGroup();
@@ -37,6 +63,11 @@ public class EchoServer {
 
                         public void initChannel(SocketChannel ch) {
 
+                            if (!lowLatency) {
+                                // 必须在最前面，才能拦截后面所有处理器的 flush
+                                ch.pipeline().addLast(new FlushConsolidationHandler(flushAfterMessages));
+                            }
+
                             ch.pipeline().addLast(new FixedLengthFrameDecoder(10));
 
                             ch.pipeline().addLast(new ResponseSampleEncoder());
@@ -61,9 +92,22 @@ public class EchoServer {
 
     }
 
+    /**
+     * 参数：[端口] [--low-latency]
+     */
     public static void main(String[] args) throws Exception {
 
-        new EchoServer().startEchoServer(9999);
+        int port = 9999;
+        boolean lowLatency = false;
+        for (String arg : args) {
+            if ("--low-latency".equals(arg)) {
+                lowLatency = true;
+            } else {
+                port = Integer.parseInt(arg);
+            }
+        }
+
+        new EchoServer(lowLatency, DEFAULT_FLUSH_AFTER_MESSAGES).startEchoServer(port);
 
     }
 
@@ -0,0 +1,145 @@
+package cn.wanxh.demo.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:50
+ * @Author: 阿左不是蜗牛
+ * @Description: EchoServer 合并 flush 前后的对比：多个连接各自流水线地发送定长请求（每次 write 100 条），
+ *  另一个线程读取响应，输出每秒处理的消息数和服务端每条消息的 write 系统调用数。
+ *  系统调用数取自 Linux 的 /proc/self/task/{tid}/io 中 syscw，只统计 Netty EventLoop 线程（线程名 nioEventLoopGroup-*）
+ */
+public class EchoServerBenchmark {
+
+    private static final int CONNECTIONS = 4;
+    private static final int MESSAGES_PER_CONNECTION = 500_000;
+    private static final int MESSAGES_PER_WRITE = 100;
+    private static final int REQUEST_LENGTH = 10;
+    // "OK" 和 10 字节数据，各带 4 字节长度，加 8 字节时间戳
+    private static final int RESPONSE_LENGTH = 4 + 2 + 4 + REQUEST_LENGTH + 8;
+
+    public static void main(String[] args) throws Exception {
+        start(10401, true);
+        start(10402, false);
+        for (int round = 0; round < 3; round++) {
+            run(10401, "low latency (flush per message)");
+            run(10402, "flush consolidation");
+        }
+        System.exit(0);
+    }
+
+    private static void start(int port, boolean lowLatency) throws InterruptedException {
+        Thread server = new Thread(() -> {
+            try{
+                new EchoServer(lowLatency, EchoServer.DEFAULT_FLUSH_AFTER_MESSAGES).startEchoServer(port);
+            }catch(Exception e){
+                e.printStackTrace();
+            }
+        }, "EchoServer-" + port);
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+    }
+
+    private static void run(int port, String label) throws Exception {
+        byte[] chunk = new byte[REQUEST_LENGTH * MESSAGES_PER_WRITE];
+        byte[] request = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < MESSAGES_PER_WRITE; i++) {
+            System.arraycopy(request, 0, chunk, i * REQUEST_LENGTH, REQUEST_LENGTH);
+        }
+
+        List<Socket> sockets = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            sockets.add(new Socket("127.0.0.1", port));
+        }
+        Thread.sleep(100);
+        long syscallsBefore = eventLoopWriteSyscalls();
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (Socket socket : sockets) {
+            Thread writer = new Thread(() -> {
+                try{
+                    OutputStream out = socket.getOutputStream();
+                    for (int sent = 0; sent < MESSAGES_PER_CONNECTION; sent += MESSAGES_PER_WRITE) {
+                        out.write(chunk);
+                    }
+                }catch(IOException e){
+                    e.printStackTrace();
+                }
+            });
+            Thread reader = new Thread(() -> {
+                try{
+                    InputStream in = socket.getInputStream();
+                    byte[] buf = new byte[64 * 1024];
+                    long remaining = (long) RESPONSE_LENGTH * MESSAGES_PER_CONNECTION;
+                    while (remaining > 0) {
+                        int n = in.read(buf);
+                        if (n < 0) {
+                            throw new IOException("closed with " + remaining + " bytes outstanding");
+                        }
+                        remaining -= n;
+                    }
+                }catch(IOException e){
+                    e.printStackTrace();
+                }
+            });
+            writer.start();
+            reader.start();
+            threads.add(writer);
+            threads.add(reader);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long syscalls = eventLoopWriteSyscalls() - syscallsBefore;
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        long messages = (long) CONNECTIONS * MESSAGES_PER_CONNECTION;
+        System.out.printf("%-32s %,10.0f msg/s, %.4f write syscalls/msg%n",
+                label, messages * 1e9 / elapsed, (double) syscalls / messages);
+    }
+
+    /**
+     * 所有 Netty EventLoop 线程累计的 write 类系统调用次数，不是 Linux 时返回 0
+     */
+    private static long eventLoopWriteSyscalls() throws IOException {
+        Path tasks = Paths.get("/proc/self/task");
+        if (!Files.isDirectory(tasks)) {
+            return 0;
+        }
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tasks)) {
+            for (Path task : stream) {
+                try{
+                    // 内核中的线程名最多 15 个字符
+                    String comm = new String(Files.readAllBytes(task.resolve("comm")), StandardCharsets.US_ASCII);
+                    if (!comm.startsWith("nioEventLoopGro")) {
+                        continue;
+                    }
+                    for (String line : Files.readAllLines(task.resolve("io"))) {
+                        if (line.startsWith("syscw:")) {
+                            total += Long.parseLong(line.substring("syscw:".length()).trim());
+                        }
+                    }
+                }catch(IOException e){
+                    // 线程已经退出
+                }
+            }
+        }
+        return total;
+    }
+}
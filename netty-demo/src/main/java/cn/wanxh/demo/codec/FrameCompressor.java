@@ -0,0 +1,221 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.compression.Snappy;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 23:10
+ * @Author: 阿左不是蜗牛
+ * @Description: RPC 数据内容的按帧压缩（Netty 自带的 Snappy 实现，直接读写 ByteBuf，不经过 byte[]），
+ *  由 RpcEncoder 和 RpcMessageDecoder 共享
+ *  只压缩不小于 threshold 的数据内容，小帧不花 CPU；压缩后没有变小的按原样发送。
+ *  压缩后的格式：若干块 { 块长度 4byte | Snappy 块（原始长度 + 压缩数据） }，每块原始数据不超过 32K。
+ *  统计压缩前后的字节数和耗时，用于调整阈值。
+ */
+public final class FrameCompressor {
+
+    // 不压缩（仍然可以解压对端发来的压缩帧）
+    public static final int DISABLED = Integer.MAX_VALUE;
+
+    // Snappy 的哈希表用 short 保存偏移，一次最多压缩 32K，更大的数据内容分块压缩
+    static final int MAX_BLOCK_LENGTH = Short.MAX_VALUE;
+
+    private final int threshold;
+
+    private final LongAdder framesBelowThreshold = new LongAdder();
+    private final LongAdder framesCompressed = new LongAdder();
+    private final LongAdder framesIncompressible = new LongAdder();
+    private final LongAdder compressInBytes = new LongAdder();
+    private final LongAdder compressOutBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+
+    private final LongAdder framesDecompressed = new LongAdder();
+    private final LongAdder decompressInBytes = new LongAdder();
+    private final LongAdder decompressOutBytes = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    /**
+     * @param threshold 数据内容不小于该字节数时才压缩
+     */
+    public FrameCompressor(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold: " + threshold + " (expected: > 0)");
+        }
+        this.threshold = threshold;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    /**
+     * 把 buf 中 [bodyStart, writerIndex) 的数据内容替换为压缩后的数据
+     * @return false 表示低于阈值或压缩后没有变小，buf 不变
+     */
+    boolean compress(ByteBufAllocator alloc, ByteBuf buf, int bodyStart) {
+        int length = buf.writerIndex() - bodyStart;
+        if (length < threshold) {
+            framesBelowThreshold.increment();
+            return false;
+        }
+        long start = System.nanoTime();
+        ByteBuf compressed = alloc.directBuffer(length);
+        ByteBuf block = alloc.directBuffer(Math.min(length, MAX_BLOCK_LENGTH));
+        try{
+            for (int offset = 0; offset < length; offset += MAX_BLOCK_LENGTH) {
+                int blockLength = Math.min(MAX_BLOCK_LENGTH, length - offset);
+                // Netty 4.1.20 的 Snappy.encode 在输入不从缓冲区下标 0 开始时（slice、读指针不为 0）会丢掉末尾的字节，
+                // 每块先复制到从下标 0 开始的缓冲区
+                block.clear();
+                block.writeBytes(buf, bodyStart + offset, blockLength);
+                int lengthIndex = compressed.writerIndex();
+                compressed.writeInt(0);
+                // Snappy 不是线程安全的，状态很小，每块新建一个
+                new Snappy().encode(block, compressed, blockLength);
+                compressed.setInt(lengthIndex, compressed.writerIndex() - lengthIndex - 4);
+            }
+            compressNanos.add(System.nanoTime() - start);
+            compressInBytes.add(length);
+            if (compressed.readableBytes() >= length) {
+                framesIncompressible.increment();
+                compressOutBytes.add(length);
+                return false;
+            }
+            framesCompressed.increment();
+            compressOutBytes.add(compressed.readableBytes());
+            buf.writerIndex(bodyStart);
+            buf.writeBytes(compressed);
+            return true;
+        }finally {
+            compressed.release();
+            block.release();
+        }
+    }
+
+    /**
+     * 解压 body 的全部可读字节
+     * @param maxLength 解压后的最大长度，防止压缩炸弹
+     * @return 解压后的数据，调用方负责释放
+     */
+    ByteBuf decompress(ByteBufAllocator alloc, ByteBuf body, int maxLength) {
+        long start = System.nanoTime();
+        int compressedLength = body.readableBytes();
+        ByteBuf decompressed = alloc.directBuffer(Math.min(maxLength, compressedLength * 4), maxLength);
+        try{
+            while (body.isReadable()) {
+                if (body.readableBytes() < 4) {
+                    throw new CorruptedFrameException("truncated compressed block header");
+                }
+                int blockLength = body.readInt();
+                if (blockLength <= 0 || blockLength > body.readableBytes()) {
+                    throw new CorruptedFrameException("compressed block length " + blockLength + " exceeds "
+                            + body.readableBytes() + " readable bytes");
+                }
+                ByteBuf block = body.readSlice(blockLength);
+                // 每块以变长编码的原始长度开头，先检查再解压，不会按伪造的长度分配内存
+                int expected = uncompressedLength(block);
+                if (expected > MAX_BLOCK_LENGTH || expected > maxLength - decompressed.writerIndex()) {
+                    throw new CorruptedFrameException("decompressed length exceeds " + maxLength);
+                }
+                int blockStart = decompressed.writerIndex();
+                new Snappy().decode(block, decompressed);
+                if (block.isReadable() || decompressed.writerIndex() - blockStart != expected) {
+                    throw new CorruptedFrameException("decompressed " + (decompressed.writerIndex() - blockStart)
+                            + " of " + expected + " bytes, " + block.readableBytes() + " compressed bytes left");
+                }
+            }
+        }catch(RuntimeException e){
+            decompressed.release();
+            throw e instanceof CorruptedFrameException ? e : new CorruptedFrameException("malformed compressed data", e);
+        }
+        decompressNanos.add(System.nanoTime() - start);
+        framesDecompressed.increment();
+        decompressInBytes.add(compressedLength);
+        decompressOutBytes.add(decompressed.readableBytes());
+        return decompressed;
+    }
+
+    private static int uncompressedLength(ByteBuf block) {
+        int value = 0;
+        for (int i = 0, shift = 0; i < 5 && i < block.readableBytes(); i++, shift += 7) {
+            byte b = block.getByte(block.readerIndex() + i);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("malformed snappy preamble");
+    }
+
+    public long getFramesBelowThreshold() {
+        return framesBelowThreshold.sum();
+    }
+
+    public long getFramesCompressed() {
+        return framesCompressed.sum();
+    }
+
+    public long getFramesIncompressible() {
+        return framesIncompressible.sum();
+    }
+
+    /**
+     * 所有尝试压缩的帧（包括没有变小、按原样发送的帧）压缩后与压缩前的字节数之比
+     */
+    public double getCompressionRatio() {
+        long in = compressInBytes.sum();
+        return in == 0 ? 1.0 : (double) compressOutBytes.sum() / in;
+    }
+
+    /**
+     * 压缩每字节的平均耗时（纳秒）
+     */
+    public double getCompressNanosPerByte() {
+        long in = compressInBytes.sum();
+        return in == 0 ? 0 : (double) compressNanos.sum() / in;
+    }
+
+    public long getFramesDecompressed() {
+        return framesDecompressed.sum();
+    }
+
+    /**
+     * 解压每字节（解压后）的平均耗时（纳秒）
+     */
+    public double getDecompressNanosPerByte() {
+        long out = decompressOutBytes.sum();
+        return out == 0 ? 0 : (double) decompressNanos.sum() / out;
+    }
+
+    public long getCompressInBytes() {
+        return compressInBytes.sum();
+    }
+
+    public long getCompressOutBytes() {
+        return compressOutBytes.sum();
+    }
+
+    public long getDecompressInBytes() {
+        return decompressInBytes.sum();
+    }
+
+    public long getDecompressOutBytes() {
+        return decompressOutBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FrameCompressor(threshold: %d, belowThreshold: %d, compressed: %d, incompressible: %d, "
+                        + "ratio: %.3f, compress: %.2f ns/B, decompressed: %d, decompress: %.2f ns/B)",
+                threshold, getFramesBelowThreshold(), getFramesCompressed(), getFramesIncompressible(),
+                getCompressionRatio(), getCompressNanosPerByte(), getFramesDecompressed(), getDecompressNanosPerByte());
+    }
+}
@@ -0,0 +1,104 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:10
+ * @Author: 阿左不是蜗牛
+ * @Description: 队头阻塞的演示：同一个连接上先发一个耗时 1 秒的请求，紧接着发 20 个不耗时的请求。
+ *  服务端业务线程池只有 1 个线程时（相当于按顺序处理），快请求都要等慢请求完成；
+ *  多个线程时快请求先返回，慢请求最后返回。后一种情况下如果有快请求比慢请求晚完成则抛出异常。
+ */
+public class HeadOfLineBlockingDemo {
+
+    private static final long SLOW_MILLIS = 1000;
+    private static final int FAST_REQUESTS = 20;
+
+    public static void main(String[] args) throws Exception {
+        run(9998, 1);
+        long[] latencies = run(9998, 8);
+        for (int i = 1; i < latencies.length; i++) {
+            if (latencies[i] >= latencies[0]) {
+                throw new IllegalStateException("fast request " + i + " blocked behind the slow one: " + latencies[i] + " ms");
+            }
+        }
+        System.out.println("OK, no head-of-line blocking");
+        System.exit(0);
+    }
+
+    /**
+     * @return 每个请求从发送到完成的毫秒数，下标 0 是慢请求
+     */
+    private static long[] run(int port, int workerThreads) throws Exception {
+        SerializerRegistry registry = SerializerRegistry.defaults();
+        ExecutorService executor = Executors.newFixedThreadPool(workerThreads);
+        RpcServerHandler serverHandler = new RpcServerHandler(request -> {
+            Thread.sleep((Long) request);
+            return request;
+        }, executor);
+        EventLoopGroup group = new NioEventLoopGroup(2);
+        try{
+            Channel server = new ServerBootstrap()
+                    .group(group)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new RpcDecoder(), new RpcMessageDecoder(registry), new RpcEncoder(registry), serverHandler);
+                        }
+                    })
+                    .bind(port).sync().channel();
+
+            RpcClientHandler client = new RpcClientHandler();
+            Channel channel = new Bootstrap()
+                    .group(group)
+                    .channel(NioSocketChannel.class)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new RpcDecoder(), new RpcMessageDecoder(registry), new RpcEncoder(registry), client);
+                        }
+                    })
+                    .connect("127.0.0.1", port).sync().channel();
+
+            long start = System.nanoTime();
+            long[] latencies = new long[FAST_REQUESTS + 1];
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i <= FAST_REQUESTS; i++) {
+                int index = i;
+                futures.add(client.call(i == 0 ? SLOW_MILLIS : 0L)
+                        .thenRun(() -> latencies[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+            long maxFast = 0;
+            for (int i = 1; i < latencies.length; i++) {
+                maxFast = Math.max(maxFast, latencies[i]);
+            }
+            System.out.printf("%d worker thread(s): slow request %d ms, slowest of %d fast requests %d ms%n",
+                    workerThreads, latencies[0], FAST_REQUESTS, maxFast);
+            channel.close().sync();
+            server.close().sync();
+            return latencies;
+        }finally {
+            group.shutdownGracefully().sync();
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 21:30
+ * @Author: 阿左不是蜗牛
+ * @Description: JDK 序列化，对象需要实现 Serializable，用作对照和兜底
+ *  通过 ByteBufOutputStream/ByteBufInputStream 直接读写 ByteBuf
+ *  反序列化的是网络上收到的字节，不加限制时任何客户端都可以发送利用链执行代码，所以不在 SerializerRegistry.defaults() 中，
+ *  需要显式注册并提供类名白名单：registry.register(new JdkSerializeService(JdkSerializeService.packages("java.lang", "java.util")))
+ *  白名单在 resolveClass 中检查，Java 8 可用；JDK 9+ 另外通过反射设置 ObjectInputFilter，限制嵌套深度和数组长度
+ */
+public class JdkSerializeService implements SerializeService {
+
+    // 对象图的最大嵌套深度
+    static final int MAX_DEPTH = 64;
+
+    // ObjectInputFilter.Config.createFilter 和 ObjectInputStream.setObjectInputFilter（JDK 9+），编译目标仍然是 Java 8，通过反射获取；不支持时为 null
+    private static final Method CREATE_FILTER;
+    private static final Method SET_FILTER;
+
+    static {
+        Method createFilter = null;
+        Method setFilter = null;
+        try{
+            Class<?> filterClass = Class.forName("java.io.ObjectInputFilter");
+            createFilter = Class.forName("java.io.ObjectInputFilter$Config").getMethod("createFilter", String.class);
+            setFilter = ObjectInputStream.class.getMethod("setObjectInputFilter", filterClass);
+        }catch(Throwable t){
+            // JDK 8 没有 ObjectInputFilter
+            createFilter = null;
+            setFilter = null;
+        }
+        CREATE_FILTER = createFilter;
+        SET_FILTER = setFilter;
+    }
+
+    private final Predicate<String> allowedClasses;
+
+    /**
+     * @param allowedClasses 类名白名单，只有返回 true 的类才会被加载；基本类型及其数组总是允许，对象数组按元素类型检查，动态代理一律拒绝
+     */
+    public JdkSerializeService(Predicate<String> allowedClasses) {
+        this.allowedClasses = Objects.requireNonNull(allowedClasses, "allowedClasses");
+    }
+
+    /**
+     * 只允许指定包中的类，不包括子包
+     */
+    public static Predicate<String> packages(String... packages) {
+        Set<String> allowed = new HashSet<>(Arrays.asList(packages));
+        return name -> {
+            int index = name.lastIndexOf('.');
+            return index > 0 && allowed.contains(name.substring(0, index));
+        };
+    }
+
+    @Override
+    public byte type() {
+        return ProtocolConstants.SERIALIZE_JDK;
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new ByteBufOutputStream(out))) {
+            oos.writeObject(obj);
+        }
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in) throws IOException {
+        // 每个数组元素至少占一个字节，数组长度不会超过可读字节数
+        int maxArray = in.readableBytes();
+        try (ObjectInputStream ois = new AllowListObjectInputStream(new ByteBufInputStream(in), allowedClasses)) {
+            setLimits(ois, maxArray);
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void setLimits(ObjectInputStream ois, int maxArray) throws IOException {
+        if (SET_FILTER == null) {
+            return;
+        }
+        try{
+            Object filter = CREATE_FILTER.invoke(null, "maxdepth=" + MAX_DEPTH + ";maxarray=" + maxArray);
+            SET_FILTER.invoke(ois, filter);
+        }catch(InvocationTargetException e){
+            throw new IOException(e.getCause());
+        }catch(IllegalAccessException e){
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "jdk";
+    }
+
+    /**
+     * 加载类之前按白名单检查类名
+     */
+    private static final class AllowListObjectInputStream extends ObjectInputStream {
+
+        private final Predicate<String> allowedClasses;
+
+        AllowListObjectInputStream(InputStream in, Predicate<String> allowedClasses) throws IOException {
+            super(in);
+            this.allowedClasses = allowedClasses;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            // 数组按元素类型检查，如 [[I、[Ljava.lang.String;
+            int dimensions = 0;
+            while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            String element = name.substring(dimensions);
+            if (dimensions > 0) {
+                if (element.length() == 1) {
+                    // 基本类型的数组
+                    return super.resolveClass(desc);
+                }
+                element = element.startsWith("L") && element.endsWith(";") ? element.substring(1, element.length() - 1) : null;
+            }
+            if (element == null || !allowedClasses.test(element)) {
+                throw new InvalidClassException(name, "not in the deserialization allow-list");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy " + Arrays.toString(interfaces), "dynamic proxies are not allowed");
+        }
+    }
+}
@@ -11,4 +11,38 @@ public class ProtocolConstants {
 
     public static final int REQ_LEN = 32;
 
+    // RpcDecoder 协议头长度：魔数 2 + 版本号 1 + 序列化算法 1 + 报文类型 1 + 状态 1 + 保留字段（请求ID）4 + 数据长度 4
+    public static final int HEADER_LEN = 14;
+
+    // 协议头中各字段的偏移
+    public static final int MAGIC_OFFSET = 0;
+    public static final int VERSION_OFFSET = 2;
+    public static final int SERIALIZE_TYPE_OFFSET = 3;
+    public static final int MESSAGE_TYPE_OFFSET = 4;
+    public static final int STATUS_OFFSET = 5;
+    public static final int REQUEST_ID_OFFSET = 6;
+    public static final int DATA_LENGTH_OFFSET = 10;
+
+    // 默认的最大数据长度（不含协议头）
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // 报文类型
+    public static final byte MSG_REQUEST = 1;
+    public static final byte MSG_RESPONSE = 2;
+
+    // 响应状态，占状态字节的低 4 位
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final int STATUS_MASK = 0x0F;
+
+    // 状态字节的高 4 位是标志位：数据内容已压缩（Snappy）、数据内容之后有 4 字节的 CRC32C
+    public static final int FLAG_COMPRESSED = 0x80;
+    public static final int FLAG_CHECKSUM = 0x40;
+    public static final int CHECKSUM_LEN = 4;
+    public static final int FLAGS_MASK = 0xF0;
+
+    // 序列化算法编号，即 SerializerRegistry 的数组下标
+    public static final byte SERIALIZE_JDK = 0;
+    public static final byte SERIALIZE_BINARY = 1;
+
 }
@@ -1,29 +1,28 @@
 package cn.wanxh.demo.codec;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.util.CharsetUtil;
-import io.netty.util.concurrent.EventExecutorGroup;
 
 /**
  * @program: netty-wanxh
  * @Date: 2022/7/15 23:50
  * @Author: 阿左不是蜗牛
- * @Description: TODO
+ * @Description: 回显每个定长请求
+ *  通过 ctx 写出，只经过本处理器之前的出站处理器；是否立即刷出由 pipeline 前面的 FlushConsolidationHandler 决定
  */
-public class RequestSampleHandler extends ChannelInboundHandlerAdapter {
+public class RequestSampleHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
     @Override
 
-    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
 
-        String data = ((ByteBuf) msg).toString(CharsetUtil.UTF_8);
+        String data = msg.toString(CharsetUtil.UTF_8);
 
         ResponseSample response = new ResponseSample("OK", data, System.currentTimeMillis());
 
-        ctx.channel().writeAndFlush(response);
+        ctx.writeAndFlush(response, ctx.voidPromise());
 
     }
 
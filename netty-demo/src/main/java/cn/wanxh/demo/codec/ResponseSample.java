@@ -11,7 +11,10 @@ public class ResponseSample {
     private String data;
     private long timestamp;
 
-    public ResponseSample(String ok, String data, long currentTimeMillis) {
+    public ResponseSample(String code, String data, long timestamp) {
+        this.code = code;
+        this.data = data;
+        this.timestamp = timestamp;
     }
 
     public String getCode() {
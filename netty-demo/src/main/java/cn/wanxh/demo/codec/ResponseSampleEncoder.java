@@ -1,33 +1,60 @@
 package cn.wanxh.demo.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
-import io.netty.util.concurrent.EventExecutorGroup;
 
 /**
  * @program: netty-wanxh
  * @Date: 2022/7/15 23:48
  * @Author: 阿左不是蜗牛
- * @Description: TODO
+ * @Description: ResponseSample 编码器，格式：
+ *  +-------------------+-------------------+-------------------+-------------------+----------------+
+ *  | code 长度 4byte    | code（UTF-8）      | data 长度 4byte    | data（UTF-8）      | timestamp 8byte |
+ *  +-------------------+-------------------+-------------------+-------------------+----------------+
+ *  长度为字节数，-1 表示 null。
+ *  allocateBuffer 按 UTF-8 最大长度一次分配足够大的直接内存缓冲区，编码过程中不扩容；
+ *  字符串用 ByteBufUtil.writeUtf8 直接写入，不经过 getBytes() 产生的临时 byte[]
  */
+@ChannelHandler.Sharable
 public class ResponseSampleEncoder extends MessageToByteEncoder<ResponseSample> {
 
+    static final int NULL_LENGTH = -1;
+
     @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ResponseSample msg, boolean preferDirect) {
+        int length = capacity(msg);
+        return preferDirect ? ctx.alloc().ioBuffer(length) : ctx.alloc().heapBuffer(length);
+    }
 
+    @Override
     protected void encode(ChannelHandlerContext ctx, ResponseSample msg, ByteBuf out) {
+        writeString(out, msg.getCode());
+        writeString(out, msg.getData());
+        out.writeLong(msg.getTimestamp());
+    }
 
-        if (msg != null) {
-
-            out.writeBytes(msg.getCode().getBytes());
-
-            out.writeBytes(msg.getData().getBytes());
+    /**
+     * 编码过程中不扩容所需的容量：writeUtf8 要求可写空间不少于 utf8MaxBytes（字符数的 3 倍），按最大长度预留，不需要事先扫描字符串
+     */
+    static int capacity(ResponseSample msg) {
+        return 4 + reserve(msg.getCode()) + 4 + reserve(msg.getData()) + 8;
+    }
 
-            out.writeLong(msg.getTimestamp());
+    private static int reserve(String s) {
+        return s == null ? 0 : ByteBufUtil.utf8MaxBytes(s);
+    }
 
+    private static void writeString(ByteBuf out, String s) {
+        if (s == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
         }
-
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        // 长度以 writeUtf8 实际写入的字节数为准，ASCII 字符由 writeUtf8 逐字节直接写入
+        out.setInt(lengthIndex, ByteBufUtil.writeUtf8(out, s));
     }
-
 }
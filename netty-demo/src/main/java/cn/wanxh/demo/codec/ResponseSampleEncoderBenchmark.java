@@ -0,0 +1,152 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:30
+ * @Author: 阿左不是蜗牛
+ * @Description: ResponseSampleEncoder 的分配测试：与 MessageToByteEncoder 一样每条消息按 capacity() 分配一个池化直接内存缓冲区、编码、释放，
+ *  通过 ThreadMXBean 统计稳定状态下每条消息在堆上分配的字节数，对照原来的 getBytes() 写法（两个临时 byte[] + 默认大小的缓冲区）。
+ *  另外单独统计编码到同一个缓冲区（每次 clear()）的分配，排除池化分配器自身的开销，应为 0
+ */
+public class ResponseSampleEncoderBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 1_000_000_000L;
+
+    // 防止结果被 JIT 消除
+    static long sink;
+
+    public static void main(String[] args) {
+        ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+        ResponseSampleEncoder encoder = new ResponseSampleEncoder();
+        ResponseSample msg = new ResponseSample("OK", "0123456789 阿左不是蜗牛", System.currentTimeMillis());
+
+        // 按长度前缀解析一遍，确认格式
+        ByteBuf check = alloc.directBuffer(ResponseSampleEncoder.capacity(msg));
+        int capacity = check.capacity();
+        encoder.encode(null, msg, check);
+        if (check.capacity() != capacity
+                || check.readableBytes() != encodedLength(msg)
+                || !msg.getCode().equals(readString(check))
+                || !msg.getData().equals(readString(check))
+                || check.readLong() != msg.getTimestamp()) {
+            throw new IllegalStateException("round trip mismatch");
+        }
+        check.release();
+
+        ByteBuf reused = alloc.directBuffer(ResponseSampleEncoder.capacity(msg));
+        for (int round = 0; round < ROUNDS; round++) {
+            long encodeOnly = 0;
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                reused.clear();
+                encoder.encode(null, msg, reused);
+                sink += reused.readableBytes();
+                encodeOnly++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ROUND_NANOS);
+            double encodeOnlyAllocated = (double) (allocatedBytes() - allocatedBefore) / encodeOnly;
+            double encodeOnlyNanos = (double) elapsed / encodeOnly;
+
+            long encoded = 0;
+            allocatedBefore = allocatedBytes();
+            start = System.nanoTime();
+            do {
+                ByteBuf out = alloc.directBuffer(ResponseSampleEncoder.capacity(msg));
+                encoder.encode(null, msg, out);
+                sink += out.readableBytes();
+                out.release();
+                encoded++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ROUND_NANOS);
+            double allocated = (double) (allocatedBytes() - allocatedBefore) / encoded;
+            double nanos = (double) elapsed / encoded;
+
+            long copied = 0;
+            allocatedBefore = allocatedBytes();
+            start = System.nanoTime();
+            do {
+                ByteBuf out = alloc.directBuffer();
+                out.writeBytes(msg.getCode().getBytes());
+                out.writeBytes(msg.getData().getBytes());
+                out.writeLong(msg.getTimestamp());
+                sink += out.readableBytes();
+                out.release();
+                copied++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ROUND_NANOS);
+            double copiedAllocated = (double) (allocatedBytes() - allocatedBefore) / copied;
+            double copiedNanos = (double) elapsed / copied;
+
+            System.out.printf("round %d: encode only %6.1f ns/msg %5.1f B/msg | writeUtf8 + pooled buffer %6.1f ns/msg %5.1f B/msg | getBytes + pooled buffer %6.1f ns/msg %5.1f B/msg%n",
+                    round, encodeOnlyNanos, encodeOnlyAllocated, nanos, allocated, copiedNanos, copiedAllocated);
+        }
+        reused.release();
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    /**
+     * 编码后的字节数
+     */
+    private static int encodedLength(ResponseSample msg) {
+        return 4 + utf8Length(msg.getCode()) + 4 + utf8Length(msg.getData()) + 8;
+    }
+
+    /**
+     * UTF-8 编码后的字节数，与 writeUtf8 一致，不成对的代理字符按一个 '?' 计
+     */
+    private static int utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 2; // 代理对共 4 字节
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuf in) {
+        int length = in.readInt();
+        if (length == ResponseSampleEncoder.NULL_LENGTH) {
+            return null;
+        }
+        String s = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return s;
+    }
+
+    /**
+     * 当前线程累计分配的字节数，JVM 不支持时返回 -1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
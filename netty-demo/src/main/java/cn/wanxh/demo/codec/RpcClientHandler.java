@@ -0,0 +1,126 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 客户端的请求多路复用：每个请求分配连接内唯一的 requestId，
+ *  响应按 requestId 找到对应的 CompletableFuture，可以乱序到达
+ *  requestId 的分配和 pending 表只在连接所属的 EventLoop 中访问，不需要加锁；
+ *  Future 也在 EventLoop 中完成，回调中不要阻塞
+ *  超时由调用方传入的 Timer（时间轮）触发，到期后回到 EventLoop 中移除 pending 表中的请求
+ */
+public class RpcClientHandler extends SimpleChannelInboundHandler<RpcMessage> {
+
+    private final IntObjectMap<CompletableFuture<Object>> pending = new IntObjectHashMap<>();
+    private int nextRequestId;
+    private volatile Channel channel;
+
+    // 已调用 call()、尚未完成的请求数，任意线程可读，用于在多个连接中选择最空闲的一个
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+    }
+
+    /**
+     * 发送请求，可以在任意线程调用
+     */
+    public CompletableFuture<Object> call(Object request) {
+        return call(request, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 发送请求，可以在任意线程调用，超过 timeout 未收到响应时以 TimeoutException 完成
+     * @param timer 触发超时的时间轮，为 null 或 timeout <= 0 时不超时
+     */
+    public CompletableFuture<Object> call(Object request, Timer timer, long timeout, TimeUnit unit) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        outstanding.incrementAndGet();
+        future.whenComplete((result, cause) -> outstanding.decrementAndGet());
+        EventLoop eventLoop = channel.eventLoop();
+        if (eventLoop.inEventLoop()) {
+            send(request, future, timer, timeout, unit);
+        } else {
+            eventLoop.execute(() -> send(request, future, timer, timeout, unit));
+        }
+        return future;
+    }
+
+    /**
+     * 已调用 call()、尚未完成的请求数（包括还没有发送出去的）
+     */
+    public int pendingRequests() {
+        return outstanding.get();
+    }
+
+    private void send(Object request, CompletableFuture<Object> future, Timer timer, long timeout, TimeUnit unit) {
+        if (!channel.isActive()) {
+            future.completeExceptionally(new ClosedChannelException());
+            return;
+        }
+        int requestId = nextRequestId++;
+        pending.put(requestId, future);
+        if (timer != null && timeout > 0) {
+            Timeout expiry = timer.newTimeout(t -> channel.eventLoop().execute(() -> {
+                if (pending.remove(requestId) != null) {
+                    future.completeExceptionally(new TimeoutException("request " + requestId + " timed out after "
+                            + unit.toMillis(timeout) + " ms"));
+                }
+            }), timeout, unit);
+            // 按时完成时从时间轮中取消，不占用时间轮的槽位
+            future.whenComplete((result, cause) -> expiry.cancel());
+        }
+        channel.writeAndFlush(RpcMessage.request(requestId, request)).addListener((ChannelFutureListener) f -> {
+            if (!f.isSuccess() && pending.remove(requestId) != null) {
+                future.completeExceptionally(f.cause());
+            }
+        });
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, RpcMessage response) {
+        CompletableFuture<Object> future = pending.remove(response.requestId());
+        if (future == null) {
+            return; // 已经超时或失败的请求
+        }
+        if (response.status() == ProtocolConstants.STATUS_OK) {
+            future.complete(response.payload());
+        } else {
+            future.completeExceptionally(new RpcException(String.valueOf(response.payload())));
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        ClosedChannelException cause = new ClosedChannelException();
+        for (CompletableFuture<Object> future : pending.values()) {
+            future.completeExceptionally(cause);
+        }
+        pending.clear();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        cause.printStackTrace();
+        ctx.close();
+    }
+}
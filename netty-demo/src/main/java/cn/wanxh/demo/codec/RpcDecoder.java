@@ -3,6 +3,8 @@ package cn.wanxh.demo.codec;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 
 import java.util.List;
 
@@ -11,6 +13,11 @@ import java.util.List;
  * @Date: 2022/7/14 23:19
  * @Author: 阿左不是蜗牛
  * @Description: 自定义解码器
+ *  协议头用绝对下标读取，不移动读指针，数据不完整时直接返回等待更多数据；
+ *  数据内容以 retainedSlice 的形式交给下游（RpcFrame），不拷贝到 byte[]。
+ *  魔数、版本号不匹配或数据长度超过上限时抛出异常，之后丢弃该连接上的所有数据（字节流已经无法重新对齐）
+ *  状态字节的低 4 位是状态，高 4 位是标志位（如数据内容已压缩），拆开后放入 RpcFrame。
+ *  带校验和标志位的帧在数据内容之后还有 4 字节的 CRC32C（覆盖协议头和数据内容），在这里校验，不一致时按协议错误处理
  */
 public class RpcDecoder extends ByteToMessageDecoder {
     /*
@@ -21,7 +28,7 @@ public class RpcDecoder extends ByteToMessageDecoder {
 
     +---------------------------------------------------------------+
 
-    | 状态 1byte |        保留字段 4byte     |      数据长度 4byte     |
+    | 状态 1byte |   保留字段（请求ID）4byte  |      数据长度 4byte     |
 
     +---------------------------------------------------------------+
 
@@ -30,38 +37,85 @@ public class RpcDecoder extends ByteToMessageDecoder {
     +---------------------------------------------------------------+
 
      */
+
+    private final int maxFrameLength;
+
+    // 出现协议错误后丢弃后续所有数据
+    private boolean corrupted;
+
+    public RpcDecoder() {
+        this(ProtocolConstants.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * @param maxFrameLength 数据内容的最大长度（不含协议头）
+     */
+    public RpcDecoder(int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength: " + maxFrameLength + " (expected: > 0)");
+        }
+        this.maxFrameLength = maxFrameLength;
+    }
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf in, List<Object> out) throws Exception {
-
-        // 判断ByteBuf可读字节
-        if (in.readableBytes() > 14) {
+        if (corrupted) {
+            in.skipBytes(in.readableBytes());
             return;
         }
 
-        in.markReaderIndex();  // 标记ByteBuf 读指针位置
-        in.skipBytes(2); // 跳过魔数
-        in.skipBytes(1); // 跳过协议版本号
-        byte serializeType = in.readByte();
-        in.skipBytes(1); // 跳过报文类型
-        in.skipBytes(1); // 跳过状态字段
-        in.skipBytes(4); // 跳过保留字段
-        int dataLength = in.readInt();
-        if (in.readableBytes() < dataLength) {
-            in.resetReaderIndex(); // 重置 ByteBuf 读指针位置
+        // 协议头不完整
+        if (in.readableBytes() < ProtocolConstants.HEADER_LEN) {
             return;
         }
 
-        byte[] data = new byte[dataLength];
-        in.readBytes(data);
+        int start = in.readerIndex();
+        short magic = in.getShort(start + ProtocolConstants.MAGIC_OFFSET);
+        if (magic != ProtocolConstants.MAGIC) {
+            throw corrupted(in, new CorruptedFrameException("bad magic: 0x" + Integer.toHexString(magic & 0xFFFF)));
+        }
+        byte version = in.getByte(start + ProtocolConstants.VERSION_OFFSET);
+        if (version != ProtocolConstants.VERSION) {
+            throw corrupted(in, new CorruptedFrameException("unsupported version: " + version));
+        }
+        int dataLength = in.getInt(start + ProtocolConstants.DATA_LENGTH_OFFSET);
+        if (dataLength < 0) {
+            throw corrupted(in, new CorruptedFrameException("negative data length: " + dataLength));
+        }
+        if (dataLength > maxFrameLength) {
+            throw corrupted(in, new TooLongFrameException("data length " + dataLength + " exceeds " + maxFrameLength));
+        }
+
+        byte status = in.getByte(start + ProtocolConstants.STATUS_OFFSET);
+        int flags = status & ProtocolConstants.FLAGS_MASK;
+        boolean hasChecksum = (flags & ProtocolConstants.FLAG_CHECKSUM) != 0;
+        int frameLength = ProtocolConstants.HEADER_LEN + dataLength + (hasChecksum ? ProtocolConstants.CHECKSUM_LEN : 0);
 
-        SerializeService serializeService = getSerializeServiceType(serializeType);
-        Object obj = serializeService.deserialize(data);
-        if (obj != null) {
-            out.add(obj);
+        // 数据内容不完整，读指针没有移动，等待更多数据
+        if (in.readableBytes() < frameLength) {
+            return;
+        }
+
+        if (hasChecksum) {
+            int expected = in.getInt(start + ProtocolConstants.HEADER_LEN + dataLength);
+            int actual = Crc32c.compute(in, start, ProtocolConstants.HEADER_LEN + dataLength);
+            if (actual != expected) {
+                throw corrupted(in, new CorruptedFrameException("checksum mismatch: expected 0x" + Integer.toHexString(expected)
+                        + ", actual 0x" + Integer.toHexString(actual)));
+            }
         }
+
+        byte serializeType = in.getByte(start + ProtocolConstants.SERIALIZE_TYPE_OFFSET);
+        byte messageType = in.getByte(start + ProtocolConstants.MESSAGE_TYPE_OFFSET);
+        int requestId = in.getInt(start + ProtocolConstants.REQUEST_ID_OFFSET);
+        ByteBuf body = in.retainedSlice(start + ProtocolConstants.HEADER_LEN, dataLength);
+        in.readerIndex(start + frameLength);
+        out.add(new RpcFrame(serializeType, messageType, (byte) (status & ProtocolConstants.STATUS_MASK), flags, requestId, body));
     }
 
-    private SerializeService getSerializeServiceType(byte serializeType) {
-        return null;
+    private Exception corrupted(ByteBuf in, Exception cause) {
+        corrupted = true;
+        in.skipBytes(in.readableBytes());
+        return cause;
     }
 }
@@ -0,0 +1,131 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 21:10
+ * @Author: 阿左不是蜗牛
+ * @Description: RpcDecoder 的微基准：同一批帧分别用 retainedSlice（零拷贝）和拷贝到 byte[] 两种方式解出，
+ *  对比 64B、4KB、1MB 数据长度下每帧的耗时和分配的字节数（ThreadMXBean 统计）
+ */
+public class RpcDecoderBenchmark {
+
+    private static final int[] SIZES = {64, 4 * 1024, 1024 * 1024};
+
+    // 每批帧的总字节数
+    private static final int BATCH_BYTES = 16 * 1024 * 1024;
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 1_000_000_000L;
+
+    // 防止解码结果被 JIT 消除
+    static long sink;
+
+    public static void main(String[] args) throws Exception {
+        for (int size : SIZES) {
+            int frames = Math.max(8, BATCH_BYTES / (size + ProtocolConstants.HEADER_LEN));
+            ByteBuf batch = PooledByteBufAllocator.DEFAULT.directBuffer(frames * (size + ProtocolConstants.HEADER_LEN));
+            for (int i = 0; i < frames; i++) {
+                writeFrame(batch, size);
+            }
+            RpcDecoder decoder = new RpcDecoder();
+            for (int round = 0; round < ROUNDS; round++) {
+                Result slice = measure(batch, frames, decoder::decode);
+                Result copy = measure(batch, frames, (ctx, in, out) -> decodeCopy(in, out));
+                System.out.printf("%7d B, round %d: retainedSlice %9.1f ns/frame %8.1f B/frame | byte[] %9.1f ns/frame %9.1f B/frame%n",
+                        size, round, slice.nanosPerFrame, slice.bytesPerFrame, copy.nanosPerFrame, copy.bytesPerFrame);
+            }
+            batch.release();
+        }
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    private interface Decode {
+        void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception;
+    }
+
+    private static final class Result {
+        double nanosPerFrame;
+        double bytesPerFrame;
+    }
+
+    /**
+     * 与 ByteToMessageDecoder 一样每解出一帧就交给下游，下游读取长度后释放
+     */
+    private static Result measure(ByteBuf batch, int frames, Decode decode) throws Exception {
+        List<Object> out = new ArrayList<>(1);
+        long decoded = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            batch.readerIndex(0);
+            while (batch.isReadable()) {
+                decode.decode(null, batch, out);
+                Object frame = out.get(0);
+                sink += frame instanceof byte[] ? ((byte[]) frame).length : ((RpcFrame) frame).content().readableBytes();
+                ReferenceCountUtil.release(frame);
+                out.clear();
+            }
+            decoded += frames;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+        long allocated = allocatedBytes() - allocatedBefore;
+        Result result = new Result();
+        result.nanosPerFrame = (double) elapsed / decoded;
+        result.bytesPerFrame = allocatedBefore < 0 ? Double.NaN : (double) allocated / decoded;
+        return result;
+    }
+
+    /**
+     * 原来的解码方式：协议头检查之后把数据内容拷贝到新的 byte[]
+     */
+    private static void decodeCopy(ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < ProtocolConstants.HEADER_LEN) {
+            return;
+        }
+        in.markReaderIndex();
+        in.skipBytes(ProtocolConstants.DATA_LENGTH_OFFSET);
+        int dataLength = in.readInt();
+        if (in.readableBytes() < dataLength) {
+            in.resetReaderIndex();
+            return;
+        }
+        byte[] data = new byte[dataLength];
+        in.readBytes(data);
+        out.add(data);
+    }
+
+    private static void writeFrame(ByteBuf buf, int dataLength) {
+        buf.writeShort(ProtocolConstants.MAGIC);
+        buf.writeByte(ProtocolConstants.VERSION);
+        buf.writeByte(0); // 序列化算法
+        buf.writeByte(0); // 报文类型
+        buf.writeByte(0); // 状态
+        buf.writeInt(0); // 保留字段
+        buf.writeInt(dataLength);
+        for (int i = 0; i < dataLength; i++) {
+            buf.writeByte(i);
+        }
+    }
+
+    /**
+     * 当前线程累计分配的字节数，JVM 不支持时返回 -1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,90 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 与 RpcDecoder 对应的编码器
+ *  协议头和数据内容直接写入 MessageToByteEncoder 从 ctx.alloc() 分配的池化缓冲区：
+ *  先写协议头并预留数据长度，序列化完成后回填，不经过中间的 byte[]。
+ *  配置了 FrameCompressor 时，数据内容达到阈值后压缩到另一个池化缓冲区、替换原数据并设置压缩标志位；
+ *  开启校验和时设置校验和标志位，在数据内容之后追加协议头和数据内容（压缩后）的 CRC32C
+ */
+@ChannelHandler.Sharable
+public class RpcEncoder extends MessageToByteEncoder<RpcMessage> {
+
+    private final SerializerRegistry registry;
+    private final int maxFrameLength;
+    private final FrameCompressor compressor;
+    private final boolean checksum;
+
+    public RpcEncoder(SerializerRegistry registry) {
+        this(registry, ProtocolConstants.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * @param maxFrameLength 数据内容的最大长度，与对端 RpcDecoder 的上限一致
+     */
+    public RpcEncoder(SerializerRegistry registry, int maxFrameLength) {
+        this(registry, maxFrameLength, null);
+    }
+
+    /**
+     * @param compressor 为 null 时不压缩
+     */
+    public RpcEncoder(SerializerRegistry registry, int maxFrameLength, FrameCompressor compressor) {
+        this(registry, maxFrameLength, compressor, false);
+    }
+
+    /**
+     * @param checksum 是否追加 CRC32C
+     */
+    public RpcEncoder(SerializerRegistry registry, int maxFrameLength, FrameCompressor compressor, boolean checksum) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength: " + maxFrameLength + " (expected: > 0)");
+        }
+        this.registry = registry;
+        this.maxFrameLength = maxFrameLength;
+        this.compressor = compressor;
+        this.checksum = checksum;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RpcMessage msg, ByteBuf out) throws Exception {
+        SerializeService serializeService = registry.require(msg.serializeType());
+        int start = out.writerIndex();
+        out.writeShort(ProtocolConstants.MAGIC);
+        out.writeByte(ProtocolConstants.VERSION);
+        out.writeByte(msg.serializeType());
+        out.writeByte(msg.messageType());
+        out.writeByte(msg.status());
+        out.writeInt(msg.requestId());
+        out.writeInt(0); // 数据长度，序列化后回填
+
+        serializeService.serialize(msg.payload(), out);
+        int bodyStart = start + ProtocolConstants.HEADER_LEN;
+        int flags = 0;
+        if (compressor != null && compressor.compress(ctx.alloc(), out, bodyStart)) {
+            flags |= ProtocolConstants.FLAG_COMPRESSED;
+        }
+        if (checksum) {
+            flags |= ProtocolConstants.FLAG_CHECKSUM;
+        }
+        int dataLength = out.writerIndex() - bodyStart;
+        if (dataLength > maxFrameLength) {
+            throw new TooLongFrameException("data length " + dataLength + " exceeds " + maxFrameLength);
+        }
+        out.setByte(start + ProtocolConstants.STATUS_OFFSET, msg.status() | flags);
+        out.setInt(start + ProtocolConstants.DATA_LENGTH_OFFSET, dataLength);
+        if (checksum) {
+            // 协议头已经回填完毕，校验范围包括协议头
+            out.writeInt(Crc32c.compute(out, start, ProtocolConstants.HEADER_LEN + dataLength));
+        }
+    }
+}
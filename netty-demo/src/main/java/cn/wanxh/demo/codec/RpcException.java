@@ -0,0 +1,16 @@
+package cn.wanxh.demo.codec;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 服务端返回的错误响应
+ */
+public class RpcException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,112 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 21:00
+ * @Author: 阿左不是蜗牛
+ * @Description: RpcDecoder 解出的一帧：协议头字段 + 数据内容
+ *  数据内容是累积缓冲区的 retainedSlice，没有拷贝，使用者处理完后必须 release()
+ *  （SimpleChannelInboundHandler 会自动释放）
+ */
+public class RpcFrame extends DefaultByteBufHolder {
+
+    private final byte serializeType;
+    private final byte messageType;
+    private final byte status;
+    private final int flags;
+    private final int requestId;
+
+    /**
+     * @param status 状态字节的低 4 位
+     * @param flags 状态字节的高 4 位（ProtocolConstants.FLAG_*）
+     */
+    public RpcFrame(byte serializeType, byte messageType, byte status, int flags, int requestId, ByteBuf body) {
+        super(body);
+        this.serializeType = serializeType;
+        this.messageType = messageType;
+        this.status = status;
+        this.flags = flags;
+        this.requestId = requestId;
+    }
+
+    public byte serializeType() {
+        return serializeType;
+    }
+
+    public byte messageType() {
+        return messageType;
+    }
+
+    public byte status() {
+        return status;
+    }
+
+    public int flags() {
+        return flags;
+    }
+
+    public boolean isCompressed() {
+        return (flags & ProtocolConstants.FLAG_COMPRESSED) != 0;
+    }
+
+    public int requestId() {
+        return requestId;
+    }
+
+    @Override
+    public RpcFrame replace(ByteBuf content) {
+        return new RpcFrame(serializeType, messageType, status, flags, requestId, content);
+    }
+
+    @Override
+    public RpcFrame copy() {
+        return (RpcFrame) super.copy();
+    }
+
+    @Override
+    public RpcFrame duplicate() {
+        return (RpcFrame) super.duplicate();
+    }
+
+    @Override
+    public RpcFrame retainedDuplicate() {
+        return (RpcFrame) super.retainedDuplicate();
+    }
+
+    @Override
+    public RpcFrame retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public RpcFrame retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public RpcFrame touch() {
+        super.touch();
+        return this;
+    }
+
+    @Override
+    public RpcFrame touch(Object hint) {
+        super.touch(hint);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcFrame(serializeType: " + serializeType
+                + ", messageType: " + messageType
+                + ", status: " + status
+                + ", flags: 0x" + Integer.toHexString(flags)
+                + ", requestId: " + requestId
+                + ", dataLength: " + content().readableBytes() + ')';
+    }
+}
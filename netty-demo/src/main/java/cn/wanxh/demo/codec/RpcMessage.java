@@ -0,0 +1,75 @@
+package cn.wanxh.demo.codec;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 一次 RPC 请求或响应，requestId 写在协议头的保留字段中，
+ *  同一连接上可以同时有多个请求在处理中，响应按完成顺序返回，由 requestId 与请求对应
+ */
+public class RpcMessage {
+
+    private final int requestId;
+    private final byte messageType;
+    private final byte status;
+    private final byte serializeType;
+    private final Object payload;
+
+    public RpcMessage(int requestId, byte messageType, byte status, byte serializeType, Object payload) {
+        this.requestId = requestId;
+        this.messageType = messageType;
+        this.status = status;
+        this.serializeType = serializeType;
+        this.payload = payload;
+    }
+
+    public static RpcMessage request(int requestId, Object payload) {
+        return new RpcMessage(requestId, ProtocolConstants.MSG_REQUEST, ProtocolConstants.STATUS_OK,
+                ProtocolConstants.SERIALIZE_BINARY, payload);
+    }
+
+    /**
+     * 与请求使用相同的序列化算法
+     */
+    public static RpcMessage response(RpcMessage request, Object result) {
+        return new RpcMessage(request.requestId, ProtocolConstants.MSG_RESPONSE, ProtocolConstants.STATUS_OK,
+                request.serializeType, result);
+    }
+
+    /**
+     * 错误响应的数据内容是错误信息，固定使用紧凑二进制序列化
+     */
+    public static RpcMessage error(int requestId, String message) {
+        return new RpcMessage(requestId, ProtocolConstants.MSG_RESPONSE, ProtocolConstants.STATUS_ERROR,
+                ProtocolConstants.SERIALIZE_BINARY, message);
+    }
+
+    public int requestId() {
+        return requestId;
+    }
+
+    public byte messageType() {
+        return messageType;
+    }
+
+    public byte status() {
+        return status;
+    }
+
+    public byte serializeType() {
+        return serializeType;
+    }
+
+    public Object payload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcMessage(requestId: " + requestId
+                + ", messageType: " + messageType
+                + ", status: " + status
+                + ", serializeType: " + serializeType
+                + ", payload: " + payload + ')';
+    }
+}
@@ -0,0 +1,60 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.util.List;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 放在 RpcDecoder 之后，按协议头中的序列化算法从 RpcFrame 的数据内容中直接反序列化，
+ *  RpcFrame 由 MessageToMessageDecoder 在解码后释放。
+ *  压缩的帧先解压到池化的直接内存缓冲区再反序列化，解压后的长度同样受 maxFrameLength 限制
+ */
+@ChannelHandler.Sharable
+public class RpcMessageDecoder extends MessageToMessageDecoder<RpcFrame> {
+
+    private final SerializerRegistry registry;
+    private final int maxFrameLength;
+    private final FrameCompressor compressor;
+
+    public RpcMessageDecoder(SerializerRegistry registry) {
+        this(registry, ProtocolConstants.DEFAULT_MAX_FRAME_LENGTH, new FrameCompressor(FrameCompressor.DISABLED));
+    }
+
+    /**
+     * @param maxFrameLength 解压后数据内容的最大长度
+     * @param compressor 解压并统计，阈值只对编码有效
+     */
+    public RpcMessageDecoder(SerializerRegistry registry, int maxFrameLength, FrameCompressor compressor) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength: " + maxFrameLength + " (expected: > 0)");
+        }
+        this.registry = registry;
+        this.maxFrameLength = maxFrameLength;
+        this.compressor = compressor;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, RpcFrame frame, List<Object> out) throws Exception {
+        SerializeService serializeService = registry.require(frame.serializeType());
+        ByteBuf body = frame.isCompressed() ? compressor.decompress(ctx.alloc(), frame.content(), maxFrameLength) : frame.content();
+        Object payload;
+        try{
+            payload = serializeService.deserialize(body);
+            if (body.isReadable()) {
+                throw new CorruptedFrameException(body.readableBytes() + " trailing bytes in " + frame);
+            }
+        }finally {
+            if (body != frame.content()) {
+                body.release();
+            }
+        }
+        out.add(new RpcMessage(frame.requestId(), frame.messageType(), frame.status(), frame.serializeType(), payload));
+    }
+}
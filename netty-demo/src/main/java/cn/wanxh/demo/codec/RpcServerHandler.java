@@ -0,0 +1,72 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 22:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 服务端的请求处理：每个请求提交到业务线程池并发执行，谁先完成谁先返回，
+ *  响应带着请求的 requestId，一个慢请求不会阻塞同一连接上后面的请求
+ *  业务线程中调用 ctx.writeAndFlush()，Netty 会把写操作转交给连接所属的 EventLoop
+ */
+@ChannelHandler.Sharable
+public class RpcServerHandler extends SimpleChannelInboundHandler<RpcMessage> {
+
+    /**
+     * 业务逻辑，在业务线程池中调用，可以阻塞
+     */
+    public interface Service {
+        Object invoke(Object request) throws Exception;
+    }
+
+    private final Service service;
+    private final Executor executor;
+
+    public RpcServerHandler(Service service, Executor executor) {
+        this.service = service;
+        this.executor = executor;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, RpcMessage request) {
+        if (request.messageType() != ProtocolConstants.MSG_REQUEST) {
+            return;
+        }
+        try{
+            executor.execute(() -> {
+                RpcMessage response;
+                try{
+                    response = RpcMessage.response(request, service.invoke(request.payload()));
+                }catch(Exception e){
+                    response = RpcMessage.error(request.requestId(), e.toString());
+                }
+                reply(ctx, response);
+            });
+        }catch(RejectedExecutionException e){
+            reply(ctx, RpcMessage.error(request.requestId(), "server busy"));
+        }
+    }
+
+    private static void reply(ChannelHandlerContext ctx, RpcMessage response) {
+        ctx.writeAndFlush(response).addListener((ChannelFutureListener) future -> {
+            // 结果无法序列化时改为返回错误，调用方不会一直等待
+            if (!future.isSuccess() && response.status() == ProtocolConstants.STATUS_OK && future.channel().isActive()) {
+                reply(ctx, RpcMessage.error(response.requestId(), String.valueOf(future.cause())));
+            }
+        });
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // 协议错误之后字节流无法恢复
+        cause.printStackTrace();
+        ctx.close();
+    }
+}
@@ -0,0 +1,95 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 21:40
+ * @Author: 阿左不是蜗牛
+ * @Description: 序列化算法的对比：同一个典型的请求对象（方法名、参数列表、附加信息）
+ *  分别用 SerializerRegistry 中注册的各算法写入同一个池化的直接内存缓冲区再读出，
+ *  输出序列化后的字节数和序列化/反序列化每次的耗时
+ */
+public class SerializeBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 1_000_000_000L;
+
+    // 防止结果被 JIT 消除
+    static long sink;
+
+    public static void main(String[] args) throws Exception {
+        SerializerRegistry registry = SerializerRegistry.defaults()
+                .register(new JdkSerializeService(JdkSerializeService.packages("java.lang", "java.util")));
+        Object request = sampleRequest();
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(4096);
+        for (byte type : new byte[]{ProtocolConstants.SERIALIZE_BINARY, ProtocolConstants.SERIALIZE_JDK}) {
+            SerializeService service = registry.require(type);
+
+            buf.clear();
+            service.serialize(request, buf);
+            int bytes = buf.readableBytes();
+            Object decoded = service.deserialize(buf);
+            if (!request.equals(decoded)) {
+                throw new IllegalStateException(service + " round trip mismatch: " + decoded);
+            }
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long serializeOps = 0;
+                long start = System.nanoTime();
+                long elapsed;
+                do {
+                    buf.clear();
+                    service.serialize(request, buf);
+                    serializeOps++;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < ROUND_NANOS);
+                double serializeNanos = (double) elapsed / serializeOps;
+
+                long deserializeOps = 0;
+                start = System.nanoTime();
+                do {
+                    buf.readerIndex(0);
+                    sink += service.deserialize(buf).hashCode();
+                    deserializeOps++;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < ROUND_NANOS);
+                double deserializeNanos = (double) elapsed / deserializeOps;
+
+                System.out.printf("%-6s round %d: %4d bytes, serialize %7.1f ns/op, deserialize %7.1f ns/op%n",
+                        service, round, bytes, serializeNanos, deserializeNanos);
+            }
+        }
+        buf.release();
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    private static Object sampleRequest() {
+        Map<String, Object> attachments = new LinkedHashMap<>();
+        attachments.put("traceId", "5f1c2a9e-7b43-4d8e-9a61-0c3e2f8b7d10");
+        attachments.put("timeoutMillis", 3000);
+        attachments.put("retry", false);
+
+        List<Object> arguments = new ArrayList<>();
+        arguments.add(10086L);
+        arguments.add("阿左不是蜗牛");
+        arguments.add(Arrays.asList("read", "write"));
+        arguments.add(0.75);
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("service", "cn.wanxh.demo.cache.UserCache");
+        request.put("method", "getUser");
+        request.put("arguments", arguments);
+        request.put("attachments", attachments);
+        request.put("timestamp", 1792245600000L);
+        return request;
+    }
+}
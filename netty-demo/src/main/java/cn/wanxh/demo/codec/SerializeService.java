@@ -1,11 +1,35 @@
 package cn.wanxh.demo.codec;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+
 /**
  * @program: netty-wanxh
  * @Date: 2022/7/14 23:29
  * @Author: 阿左不是蜗牛
- * @Description: TODO
+ * @Description: 序列化算法，直接读写 ByteBuf，不经过中间的 byte[]
+ *  实现必须是线程安全的，同一个实例由所有连接共享
  */
-interface SerializeService {
-    Object deserialize(byte[] data);
+public interface SerializeService {
+
+    /**
+     * 协议头中的序列化算法编号
+     */
+    byte type();
+
+    /**
+     * 把对象写入 out 的 writerIndex 之后
+     */
+    void serialize(Object obj, ByteBuf out) throws IOException;
+
+    /**
+     * 从 in 的可读字节中读出一个对象，读指针移动到对象之后
+     */
+    Object deserialize(ByteBuf in) throws IOException;
+
+    default Object deserialize(byte[] data) throws IOException {
+        return deserialize(Unpooled.wrappedBuffer(data));
+    }
 }
@@ -0,0 +1,50 @@
+package cn.wanxh.demo.codec;
+
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 21:30
+ * @Author: 阿左不是蜗牛
+ * @Description: 按协议头中的序列化算法编号查找 SerializeService，编号即数组下标，查找不经过 Map
+ *  注册在服务启动前完成，之后只读，可以被所有连接共享
+ */
+public final class SerializerRegistry {
+
+    private final SerializeService[] services = new SerializeService[256];
+
+    /**
+     * 紧凑二进制序列化。JDK 序列化会反序列化对端发来的任意类，需要带白名单显式注册，见 JdkSerializeService
+     */
+    public static SerializerRegistry defaults() {
+        return new SerializerRegistry()
+                .register(new BinarySerializeService());
+    }
+
+    public SerializerRegistry register(SerializeService service) {
+        int index = service.type() & 0xFF;
+        if (services[index] != null) {
+            throw new IllegalArgumentException("serialize type " + index + " already registered: " + services[index]);
+        }
+        services[index] = service;
+        return this;
+    }
+
+    /**
+     * @return 未注册时返回 null
+     */
+    public SerializeService get(byte serializeType) {
+        return services[serializeType & 0xFF];
+    }
+
+    /**
+     * 未注册的编号说明对端使用了不支持的序列化算法
+     */
+    public SerializeService require(byte serializeType) {
+        SerializeService service = services[serializeType & 0xFF];
+        if (service == null) {
+            throw new CorruptedFrameException("unknown serialize type: " + (serializeType & 0xFF));
+        }
+        return service;
+    }
+}
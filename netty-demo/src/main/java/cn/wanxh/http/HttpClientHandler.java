@@ -4,6 +4,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
 
 public class HttpClientHandler extends ChannelInboundHandlerAdapter {
 
@@ -21,6 +22,11 @@ public class HttpClientHandler extends ChannelInboundHandlerAdapter {
 
             buf.release();
 
+            // 服务端保持连接，收到完整响应后由客户端关闭，HttpClient.connect 才会返回
+            if (content instanceof LastHttpContent) {
+                ctx.close();
+            }
+
         }
 
     }
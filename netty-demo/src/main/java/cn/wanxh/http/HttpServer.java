@@ -4,19 +4,41 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HttpServer
  */
 public class HttpServer {
+
+    // 保持的连接没有读写时关闭的秒数
+    public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+
+    // 不超过这个长度的请求体在内存中聚合，更大的写入 UPLOAD_DIRECTORY
+    public static final int MAX_AGGREGATED_CONTENT_LENGTH = 65536;
+    public static final long MAX_UPLOAD_BYTES = 16L * 1024 * 1024 * 1024;
+    public static final Path UPLOAD_DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "netty-uploads");
+
+    // STATIC_URI_PREFIX 下的请求由 HttpStaticFileHandler 返回 STATIC_ROOT 中的文件
+    public static final String STATIC_URI_PREFIX = "/static/";
+    public static final Path STATIC_ROOT = Paths.get(System.getProperty("http.static.root", "static"));
+
     /**
      * 1. 服务器启动类
      *      创建引导器
@@ -29,6 +51,10 @@ public class HttpServer {
      */
 
     public static void start(int port) throws Exception{
+        start(port, DEFAULT_IDLE_TIMEOUT_SECONDS);
+    }
+
+    public static void start(int port, int idleTimeoutSeconds) throws Exception{
         /**
          * 1. 单线程Reactor模型 配置
          *  ServerBootstrap serverBootstrap = new ServerBootstrap();
@@ -49,8 +75,12 @@ public class HttpServer {
          */
         NioEventLoopGroup bossGroup = new NioEventLoopGroup();
         NioEventLoopGroup workGroup = new NioEventLoopGroup();
+        // 上传的请求体在这里写盘，不占用 EventLoop 线程
+        ExecutorService diskExecutor = Executors.newFixedThreadPool(2);
 
         try{
+            Files.createDirectories(UPLOAD_DIRECTORY);
+            Files.createDirectories(STATIC_ROOT);
             ServerBootstrap serverBootstrap = new ServerBootstrap();
             serverBootstrap.group(bossGroup, workGroup)
                     .channel(NioServerSocketChannel.class)
@@ -59,12 +89,7 @@ public class HttpServer {
                         @Override
                         protected void initChannel(SocketChannel ch){
                             System.out.println(ch.config());
-                            ch.pipeline()   // 每个SocketChannel创建都会build一个PipeLine与之对应，ChannelPipeline去注册多个ChannelHandle
-                                    .addLast("codec", new HttpServerCodec())  // HTTP 编解码
-                                    .addLast("compressor", new HttpContentCompressor())  // HttpContent 压缩
-                                    .addLast("aggregator", new HttpObjectAggregator(65536))  // HTTP 消息聚合
-                                    .addLast("handler", new HttpServerHandler());  // 自定义业务逻辑处理器
-
+                            initPipeline(ch.pipeline(), idleTimeoutSeconds, UPLOAD_DIRECTORY, MAX_AGGREGATED_CONTENT_LENGTH, STATIC_ROOT, diskExecutor);
                         }
                     })
                     .childOption(ChannelOption.SO_KEEPALIVE, true);
@@ -74,11 +99,28 @@ public class HttpServer {
         }finally {
             workGroup.shutdownGracefully();
             bossGroup.shutdownGracefully();
+            diskExecutor.shutdown();
         }
     }
 
+    /**
+     * 每个SocketChannel创建都会build一个PipeLine与之对应，ChannelPipeline去注册多个ChannelHandle；
+     * HttpUploadPipelineTest 也用这个方法搭建管道，测试的是同一个顺序
+     * @param aggregateLimit 不超过这个长度的请求体在内存中聚合，更大的写入 uploadDirectory
+     */
+    static void initPipeline(ChannelPipeline pipeline, int idleTimeoutSeconds, Path uploadDirectory, int aggregateLimit, Path staticRoot, Executor diskExecutor) {
+        pipeline
+                .addLast("idle", new IdleStateHandler(true, 0, 0, idleTimeoutSeconds, TimeUnit.SECONDS))  // 持久连接的空闲检测，由 HttpServerHandler 关闭；observeOutput：写出仍有进展时不算空闲
+                .addLast("codec", new HttpServerCodec())  // HTTP 编解码
+                .addLast("compressor", new HttpStaticFileHandler.HttpFileContentCompressor())  // HttpContent 压缩，零拷贝发送的文件除外
+                .addLast("chunked", new ChunkedWriteHandler())  // 把 ChunkedNioFile 分块读成 HttpContent，经过压缩后写出；所有响应都经过这里排队，保证顺序
+                .addLast("upload", new HttpUploadHandler(uploadDirectory, aggregateLimit, MAX_UPLOAD_BYTES, diskExecutor))  // 大请求体流式写入文件
+                .addLast("aggregator", new HttpObjectAggregator(aggregateLimit))  // HTTP 消息聚合
+                .addLast("static", new HttpStaticFileHandler(STATIC_URI_PREFIX, staticRoot))  // 静态文件
+                .addLast("handler", new HttpServerHandler());  // 自定义业务逻辑处理器
+    }
 
     public static void main(String[] args) throws Exception {
-        start(9991);   //   curl http:127.0.0.1:9991/wan
+        start(9991);   //   curl http:127.0.0.1:9991/wan    curl -r 0-99 http:127.0.0.1:9991/static/index.html
     }
 }
@@ -1,25 +1,73 @@
 package cn.wanxh.http;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.CharsetUtil;
 
+/**
+ * HttpServerHandler
+ *  1. 持久连接：按 HttpUtil.isKeepAlive 判断（HTTP/1.1 默认保持，HTTP/1.0 需要 Connection: keep-alive），
+ *     响应带上 Content-Length，客户端不需要等连接关闭来判断响应结束；不保持连接时写完响应再关闭
+ *  2. 管道化：同一连接上的请求在 EventLoop 中按顺序处理，响应按请求顺序写出；
+ *     一次读到的多个请求的响应只 write，不逐个 flush，在 channelReadComplete 中一起刷出
+ *  3. 空闲超时：保持的连接在 HttpServer 配置的时间内没有读写时，由 IdleStateHandler 触发事件后关闭
+ */
 public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+        if (msg.decoderResult().isFailure()) {
+            // 请求格式错误时后续字节无法再按请求解析，返回 400 后关闭连接
+            writeResponse(ctx, msg, HttpResponseStatus.BAD_REQUEST, "Bad request: " + msg.decoderResult().cause() + "\n", false);
+            return;
+        }
+
         String content = String.format("Receive http request, uri: %s, method: %s, content: %s%n", msg.uri(), msg.method(), msg.content().toString(CharsetUtil.UTF_8));
 
-        FullHttpResponse response = new DefaultFullHttpResponse(
+        writeResponse(ctx, msg, HttpResponseStatus.OK, content, HttpUtil.isKeepAlive(msg));
+    }
+
+    private static void writeResponse(ChannelHandlerContext ctx, FullHttpRequest request, HttpResponseStatus status, String content, boolean keepAlive) {
+        ByteBuf body = ByteBufUtil.writeUtf8(ctx.alloc(), content);
+
+        FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), status, body);
+
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8")
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, body.readableBytes());
+
+        // HTTP/1.1 默认保持连接，只在关闭时写 Connection: close；HTTP/1.0 保持连接时写 Connection: keep-alive
+        HttpUtil.setKeepAlive(response, keepAlive);
 
-                HttpVersion.HTTP_1_1,
+        if (keepAlive) {
+            ctx.write(response, ctx.voidPromise());
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
 
-                HttpResponseStatus.OK,
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+    }
 
-                Unpooled.wrappedBuffer(content.getBytes()));
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            // 保持的连接空闲超时
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
 
-        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        cause.printStackTrace();
+        ctx.close();
     }
 }
@@ -0,0 +1,423 @@
+package cn.wanxh.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HttpStaticFileHandler
+ *  把 uriPrefix 下的 GET/HEAD 请求映射到 root 目录中的文件，其他请求交给后面的处理器
+ *  1. 零拷贝：没有 TLS、也不需要压缩时用 DefaultFileRegion 发送，NIO 传输下走 FileChannel.transferTo（Linux 上是 sendfile），
+ *     文件内容不经过用户态；需要变换内容时（有 SslHandler，或客户端接受压缩、文件类型可压缩且不是范围请求）
+ *     改用 ChunkedNioFile，由 ChunkedWriteHandler 分块读出后再经过 HttpContentCompressor / SslHandler
+ *  2. Range：支持单个字节范围（bytes=a-b、bytes=a-、bytes=-n），返回 206；多个范围时返回整个文件；
+ *     If-Range 与当前 ETag/修改时间不一致时也返回整个文件；范围无效时返回 416
+ *  3. 条件请求：ETag 由文件大小和修改时间生成，If-None-Match 优先于 If-Modified-Since，未修改时返回 304
+ */
+public class HttpStaticFileHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("htm", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("css", "text/css; charset=UTF-8");
+        CONTENT_TYPES.put("txt", "text/plain; charset=UTF-8");
+        CONTENT_TYPES.put("csv", "text/csv; charset=UTF-8");
+        CONTENT_TYPES.put("js", "application/javascript");
+        CONTENT_TYPES.put("json", "application/json");
+        CONTENT_TYPES.put("xml", "application/xml");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("pdf", "application/pdf");
+        CONTENT_TYPES.put("zip", "application/zip");
+        CONTENT_TYPES.put("gz", "application/gzip");
+        CONTENT_TYPES.put("mp4", "video/mp4");
+        CONTENT_TYPES.put("wasm", "application/wasm");
+    }
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    // ChunkedNioFile 每次读取的块大小
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // 零拷贝时每个 FileRegion 的大小：每发送完一段就是一次完成的写，HttpServer 的 IdleStateHandler 据此判断连接仍在传输，
+    // 整个文件作为一个 FileRegion 时要到发送完才算写完，慢速客户端下载大文件会在中途被空闲超时关闭
+    private static final long REGION_SIZE = 1024 * 1024;
+
+    private final String uriPrefix;
+    private final Path root;
+    private final boolean zeroCopy;
+
+    public HttpStaticFileHandler(String uriPrefix, Path root) {
+        this(uriPrefix, root, true);
+    }
+
+    /**
+     * @param zeroCopy 为 false 时总是使用 ChunkedNioFile，用于对比
+     */
+    public HttpStaticFileHandler(String uriPrefix, Path root, boolean zeroCopy) {
+        this.uriPrefix = uriPrefix;
+        try{
+            this.root = root.toRealPath();
+        }catch(IOException e){
+            throw new IllegalArgumentException("static file root does not exist: " + root, e);
+        }
+        this.zeroCopy = zeroCopy;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof FullHttpRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        FullHttpRequest request = (FullHttpRequest) msg;
+        String path = new QueryStringDecoder(request.uri()).path();
+        if (!path.startsWith(uriPrefix) || request.decoderResult().isFailure()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        try{
+            serve(ctx, request, path.substring(uriPrefix.length()));
+        }finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+        ctx.fireChannelReadComplete();
+    }
+
+    private void serve(ChannelHandlerContext ctx, FullHttpRequest request, String relative) throws IOException {
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        HttpMethod method = request.method();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            FullHttpResponse response = errorResponse(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+            response.headers().set(HttpHeaderNames.ALLOW, "GET, HEAD");
+            send(ctx, response, keepAlive);
+            return;
+        }
+
+        Path file = resolve(relative);
+        BasicFileAttributes attributes = null;
+        if (file != null) {
+            try{
+                attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            }catch(NoSuchFileException e){
+                // 404
+            }
+        }
+        if (attributes == null || !attributes.isRegularFile()) {
+            send(ctx, errorResponse(ctx, request, HttpResponseStatus.NOT_FOUND), keepAlive);
+            return;
+        }
+
+        long length = attributes.size();
+        // HTTP 日期只精确到秒
+        long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        if (notModified(request, etag, lastModified)) {
+            FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.NOT_MODIFIED);
+            setValidators(response, etag, lastModified);
+            send(ctx, response, keepAlive);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        HttpResponseStatus status = HttpResponseStatus.OK;
+        String range = request.headers().get(HttpHeaderNames.RANGE);
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + length);
+                HttpUtil.setContentLength(response, 0);
+                send(ctx, response, keepAlive);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                status = HttpResponseStatus.PARTIAL_CONTENT;
+            }
+        }
+        long count = end - start + 1;
+
+        String contentType = contentType(file);
+        boolean headersOnly = HttpMethod.HEAD.equals(method) || count == 0;
+        // 只压缩完整的可压缩文件：206 的 Content-Range 必须对应实际发送的字节，图片、压缩包等再压缩也没有收益
+        boolean compress = !headersOnly && status == HttpResponseStatus.OK && isCompressible(contentType) && acceptsCompression(request);
+        // 压缩或 TLS 加密都要在用户态处理文件内容，不能用 sendfile
+        boolean chunked = !zeroCopy || compress || ctx.pipeline().get(SslHandler.class) != null;
+
+        HttpResponse response = compress
+                ? new DefaultHttpResponse(request.protocolVersion(), status)
+                : new IdentityFileResponse(request.protocolVersion(), status);
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, contentType)
+                .set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        setValidators(response, etag, lastModified);
+        if (status == HttpResponseStatus.PARTIAL_CONTENT) {
+            response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        HttpUtil.setContentLength(response, count);
+        HttpUtil.setKeepAlive(response, keepAlive);
+
+        ChannelFuture last;
+        if (headersOnly) {
+            // HEAD 只返回响应头，Content-Length 是未压缩的文件长度
+            ctx.write(response);
+            last = ctx.write(LastHttpContent.EMPTY_LAST_CONTENT);
+            if (!keepAlive) {
+                last.addListener(ChannelFutureListener.CLOSE);
+            }
+            return;
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ctx.write(response);
+        if (chunked) {
+            // HttpChunkedInput 在文件读完后写出 LastHttpContent
+            last = ctx.write(new HttpChunkedInput(new ChunkedNioFile(channel, start, count, CHUNK_SIZE)));
+        } else {
+            // 文件内容由 sendfile 直接从页缓存发送，按 REGION_SIZE 分段写出，最后一段释放时关闭 FileChannel
+            for (long position = start, remaining = count; remaining > 0; ) {
+                long size = Math.min(remaining, REGION_SIZE);
+                remaining -= size;
+                ctx.write(new FileSlice(channel, position, size, remaining == 0));
+                position += size;
+            }
+            last = ctx.write(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        if (!keepAlive) {
+            last.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * 把请求路径解析为 root 下的文件，越出 root（..、符号链接）时返回 null
+     */
+    private Path resolve(String relative) {
+        if (relative.isEmpty() || relative.indexOf('\0') >= 0) {
+            return null;
+        }
+        Path file = root.resolve(relative.startsWith("/") ? relative.substring(1) : relative).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        try{
+            Path real = file.toRealPath();
+            return real.startsWith(root) ? real : null;
+        }catch(IOException e){
+            return null;
+        }
+    }
+
+    private static boolean notModified(HttpRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.headers().get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matches(ifNoneMatch, etag);
+        }
+        String ifModifiedSince = request.headers().get(HttpHeaderNames.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        Date date = DateFormatter.parseHttpDate(ifModifiedSince);
+        return date != null && lastModified <= date.getTime();
+    }
+
+    /**
+     * If-None-Match 中的任意一个实体标签（弱比较）与 etag 相同，或者为 *
+     */
+    private static boolean matches(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 没有 If-Range，或者 If-Range 与当前的 ETag（强比较）/修改时间一致时才按 Range 返回部分内容
+     */
+    private static boolean ifRangeMatches(HttpRequest request, String etag, long lastModified) {
+        String ifRange = request.headers().get(HttpHeaderNames.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        Date date = DateFormatter.parseHttpDate(ifRange);
+        return date != null && date.getTime() == lastModified;
+    }
+
+    /**
+     * @return 单个范围时返回 {start, end}（含），多个范围或无法识别时返回空数组（按整个文件处理），范围无法满足时返回 null
+     */
+    static long[] parseRange(String header, long length) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return new long[0];
+        }
+        value = value.substring(6).trim();
+        if (value.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        String first = value.substring(0, dash).trim();
+        String last = value.substring(dash + 1).trim();
+        long start;
+        long end;
+        try{
+            if (first.isEmpty()) {
+                // bytes=-n：最后 n 个字节
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (start >= length || end < start) {
+                    return null;
+                }
+            }
+        }catch(NumberFormatException e){
+            return new long[0];
+        }
+        return new long[]{start, end};
+    }
+
+    private static void setValidators(HttpResponse response, String etag, long lastModified) {
+        response.headers()
+                .set(HttpHeaderNames.ETAG, etag)
+                .set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(lastModified)));
+    }
+
+    private static String contentType(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String type = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return type == null ? DEFAULT_CONTENT_TYPE : type;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/")
+                || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json")
+                || contentType.startsWith("application/xml")
+                || contentType.startsWith("image/svg+xml");
+    }
+
+    private static boolean acceptsCompression(HttpRequest request) {
+        String acceptEncoding = request.headers().get(HttpHeaderNames.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        acceptEncoding = acceptEncoding.toLowerCase(Locale.ROOT);
+        return acceptEncoding.contains("gzip") || acceptEncoding.contains("deflate");
+    }
+
+    private static FullHttpResponse errorResponse(ChannelHandlerContext ctx, HttpRequest request, HttpResponseStatus status) {
+        ByteBuf body = ByteBufUtil.writeUtf8(ctx.alloc(), status + "\n");
+        FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), status, body);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        HttpUtil.setContentLength(response, body.readableBytes());
+        return response;
+    }
+
+    private static void send(ChannelHandlerContext ctx, FullHttpResponse response, boolean keepAlive) {
+        HttpUtil.setKeepAlive(response, keepAlive);
+        if (keepAlive) {
+            ctx.write(response, ctx.voidPromise());
+        } else {
+            ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * 内容按原样发送的响应头（FileRegion、HEAD、范围请求、不可压缩的文件），HttpFileContentCompressor 不压缩这类响应
+     */
+    static final class IdentityFileResponse extends DefaultHttpResponse {
+        IdentityFileResponse(HttpVersion version, HttpResponseStatus status) {
+            super(version, status);
+        }
+    }
+
+    /**
+     * 共享同一个 FileChannel 的文件分段，只有最后一段释放时关闭文件；
+     * 各段按顺序发送，连接关闭时未发送的段也会依次释放，最后一段总是最后释放
+     */
+    static final class FileSlice extends DefaultFileRegion {
+        private final boolean last;
+
+        FileSlice(FileChannel file, long position, long count, boolean last) {
+            super(file, position, count);
+            this.last = last;
+        }
+
+        @Override
+        protected void deallocate() {
+            if (last) {
+                super.deallocate();
+            }
+        }
+    }
+
+    /**
+     * HttpContentCompressor 只能压缩 HttpContent，FileRegion 会原样通过；
+     * 如果照常为 IdentityFileResponse 开始压缩，响应头会变成 gzip 而内容是原始字节，所以跳过这类响应。
+     * 带 Content-Range 的响应压缩后范围与发送的字节不再对应，也不压缩
+     */
+    static final class HttpFileContentCompressor extends HttpContentCompressor {
+        @Override
+        protected Result beginEncode(HttpResponse headers, String acceptEncoding) throws Exception {
+            if (headers instanceof IdentityFileResponse || headers.headers().contains(HttpHeaderNames.CONTENT_RANGE)) {
+                return null;
+            }
+            return super.beginEncode(headers, acceptEncoding);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package cn.wanxh.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HttpUploadHandler
+ *  放在 HttpServerCodec 之后、HttpObjectAggregator 之前，按请求决定是否聚合：
+ *  1. Content-Length 不超过聚合上限的请求原样交给后面的 HttpObjectAggregator，仍然得到 FullHttpRequest；
+ *  2. 更大的或者没有 Content-Length 的 chunked 请求体边收边写入临时文件，不在内存中聚合，
+ *     写文件在 diskExecutor 中按顺序执行，不阻塞 EventLoop；写完后返回 201 和上传目录中的文件名，不暴露服务端的绝对路径。
+ *  每个请求排队等待写盘的数据超过 HIGH_WATER_MARK 时关闭 autoRead，降到 LOW_WATER_MARK 以下再打开，
+ *  磁盘跟不上时由 TCP 流控让客户端放慢，每个请求占用的内存不超过高水位加一次读取的大小。
+ *  上传请求写完之前同一连接上管道化的后续请求先暂存，上传的响应写出后再处理，响应顺序与请求一致。
+ *  这里写出的响应要排在前面仍在分块发送的响应之后，所以要放在 ChunkedWriteHandler 之后（更靠近 tail）。
+ */
+public class HttpUploadHandler extends ChannelInboundHandlerAdapter {
+
+    static final long HIGH_WATER_MARK = 1024 * 1024;
+    static final long LOW_WATER_MARK = 256 * 1024;
+
+    private enum State {
+        // 没有正在流式接收的请求，消息原样传给后面的处理器
+        PASS_THROUGH,
+        // 正在把请求体写入文件
+        STREAMING,
+        // 请求体已收完，等待文件写完并返回响应
+        FINISHING,
+        // 请求体超过上限，已经返回 413，丢弃剩余内容
+        DISCARDING
+    }
+
+    private final Path directory;
+    private final int aggregateLimit;
+    private final long maxUploadBytes;
+    private final Executor diskExecutor;
+
+    private ChannelHandlerContext ctx;
+    private State state = State.PASS_THROUGH;
+    private final ArrayDeque<Object> deferred = new ArrayDeque<>();
+
+    // 当前上传请求，只在 EventLoop 中访问
+    private HttpRequest request;
+    private long received;
+    private boolean backlogged;
+
+    // 写盘任务按提交顺序串行执行，file / path 只在写盘任务中访问
+    private CompletableFuture<Void> diskQueue;
+    private FileChannel file;
+    private Path path;
+    private volatile IOException failure;
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    /**
+     * @param aggregateLimit 不超过这个长度的请求体交给 HttpObjectAggregator 聚合
+     * @param maxUploadBytes 流式接收的请求体上限，超过返回 413
+     */
+    public HttpUploadHandler(Path directory, int aggregateLimit, long maxUploadBytes, Executor diskExecutor) {
+        this.directory = directory;
+        this.aggregateLimit = aggregateLimit;
+        this.maxUploadBytes = maxUploadBytes;
+        this.diskExecutor = diskExecutor;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        switch (state) {
+            case STREAMING:
+                if (msg instanceof HttpContent) {
+                    stream((HttpContent) msg);
+                    return;
+                }
+                break;
+            case FINISHING:
+                deferred.add(msg);
+                return;
+            case DISCARDING:
+                if (msg instanceof HttpContent) {
+                    ReferenceCountUtil.release(msg);
+                    return;
+                }
+                break;
+            default:
+                if (msg instanceof HttpRequest && shouldStream((HttpRequest) msg)) {
+                    begin((HttpRequest) msg);
+                    return;
+                }
+                ctx.fireChannelRead(msg);
+                return;
+        }
+        // 流式接收或丢弃过程中不应该出现新的请求头
+        ReferenceCountUtil.release(msg);
+        ctx.close();
+    }
+
+    private boolean shouldStream(HttpRequest request) {
+        if (request.decoderResult().isFailure()) {
+            return false;
+        }
+        long contentLength = HttpUtil.getContentLength(request, -1L);
+        return contentLength > aggregateLimit || contentLength < 0 && HttpUtil.isTransferEncodingChunked(request);
+    }
+
+    private void begin(HttpRequest request) {
+        if (HttpUtil.getContentLength(request, -1L) > maxUploadBytes) {
+            reject(request);
+            return;
+        }
+        this.request = request;
+        this.received = 0;
+        this.failure = null;
+        this.state = State.STREAMING;
+        diskQueue = CompletableFuture.completedFuture(null);
+        submit(() -> {
+            try{
+                path = Files.createTempFile(directory, "upload-", ".bin");
+                file = FileChannel.open(path, StandardOpenOption.WRITE);
+            }catch(IOException e){
+                failure = e;
+            }
+        });
+        if (HttpUtil.is100ContinueExpected(request)) {
+            ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+        }
+    }
+
+    private void stream(HttpContent chunk) {
+        ByteBuf content = chunk.content();
+        int bytes = content.readableBytes();
+        received += bytes;
+        if (received > maxUploadBytes) {
+            chunk.release();
+            abort();
+            reject(request);
+            return;
+        }
+        if (pendingBytes.addAndGet(bytes) > HIGH_WATER_MARK && !backlogged) {
+            backlogged = true;
+            updateAutoRead();
+        }
+        submit(() -> {
+            try{
+                if (failure == null) {
+                    while (content.isReadable()) {
+                        content.readBytes(file, content.readableBytes());
+                    }
+                }
+            }catch(IOException e){
+                failure = e;
+            }finally {
+                chunk.release();
+                drained(bytes);
+            }
+        });
+        if (chunk instanceof LastHttpContent) {
+            state = State.FINISHING;
+            updateAutoRead();
+            submit(this::closeFile);
+            diskQueue.whenComplete((ignored, cause) -> ctx.channel().eventLoop().execute(this::finish));
+        }
+    }
+
+    /**
+     * 写盘任务中调用：排队的数据降到低水位以下时回到 EventLoop 恢复读取
+     */
+    private void drained(int bytes) {
+        if (pendingBytes.addAndGet(-bytes) <= LOW_WATER_MARK) {
+            ctx.channel().eventLoop().execute(() -> {
+                if (backlogged && pendingBytes.get() <= LOW_WATER_MARK) {
+                    backlogged = false;
+                    updateAutoRead();
+                }
+            });
+        }
+    }
+
+    private void updateAutoRead() {
+        ctx.channel().config().setAutoRead(!backlogged && state != State.FINISHING);
+    }
+
+    private void finish() {
+        if (state != State.FINISHING) {
+            return; // 连接已经关闭
+        }
+        IOException cause = failure;
+        if (cause != null) {
+            submit(this::deleteFile);
+            // 异常信息中可能带有服务端的路径，只在服务端输出
+            cause.printStackTrace();
+            writeResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Upload failed\n", false);
+        } else {
+            writeResponse(HttpResponseStatus.CREATED, "Stored " + received + " bytes as " + directory.relativize(path) + "\n", HttpUtil.isKeepAlive(request));
+        }
+        request = null;
+        state = State.PASS_THROUGH;
+        updateAutoRead();
+
+        // 处理上传期间暂存的管道化请求；其中的上传请求的请求体也在暂存的消息中，一直处理到又有上传进入 FINISHING 为止，
+        // 剩下的消息在那个上传写完后的 finish 中继续处理
+        Object msg;
+        while (state != State.FINISHING && (msg = deferred.poll()) != null) {
+            channelRead(ctx, msg);
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    /**
+     * 请求体超过上限：返回 413 并关闭连接，剩余的请求体不再读取
+     */
+    private void reject(HttpRequest request) {
+        state = State.DISCARDING;
+        this.request = request;
+        writeResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, "Upload exceeds " + maxUploadBytes + " bytes\n", false);
+    }
+
+    private void writeResponse(HttpResponseStatus status, String content, boolean keepAlive) {
+        ByteBuf body = ByteBufUtil.writeUtf8(ctx.alloc(), content);
+        FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), status, body);
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8")
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, body.readableBytes());
+        HttpUtil.setKeepAlive(response, keepAlive);
+        if (keepAlive) {
+            ctx.writeAndFlush(response, ctx.voidPromise());
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * 中止当前上传：已提交的写盘任务执行完后删除文件
+     */
+    private void abort() {
+        if (state == State.STREAMING || state == State.FINISHING) {
+            submit(this::deleteFile);
+        }
+        state = State.PASS_THROUGH;
+        Object msg;
+        while ((msg = deferred.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    /**
+     * 提交写盘任务，前一个任务失败也继续执行，保证每个请求体块都会被释放
+     */
+    private void submit(Runnable task) {
+        diskQueue = diskQueue.handleAsync((ignored, cause) -> {
+            task.run();
+            return null;
+        }, diskExecutor);
+    }
+
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try{
+            file.close();
+        }catch(IOException e){
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        file = null;
+    }
+
+    private void deleteFile() {
+        closeFile();
+        if (path != null) {
+            try{
+                Files.deleteIfExists(path);
+            }catch(IOException e){
+                // 忽略
+            }
+            path = null;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 客户端在上传过程中断开，删除不完整的文件
+        abort();
+        super.channelInactive(ctx);
+    }
+}
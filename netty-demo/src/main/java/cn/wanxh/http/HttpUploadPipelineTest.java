@@ -0,0 +1,227 @@
+package cn.wanxh.http;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 03:00
+ * @Author: 阿左不是蜗牛
+ * @Description: HttpUploadHandler 管道化测试：管道由 HttpServer.initPipeline 搭建，与服务器相同。
+ *  同一个连接上一次写出一个 gzip 压缩的静态文件下载、连续的多个上传请求（Content-Length 和 chunked）以及夹在中间的聚合请求，
+ *  后面的上传在前一个上传写盘期间暂存，上传的响应要排在仍在分块发送的下载之后；
+ *  校验每个请求都按顺序得到响应、下载解压后的大小和上传的字节数正确
+ */
+public class HttpUploadPipelineTest {
+
+    private static final int PORT = 10602;
+    private static final int AGGREGATE_LIMIT = 10;
+    private static final int ROUNDS = 20;
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    // 足够大，上传写盘完成时下载还在分块发送
+    private static final int DOWNLOAD_SIZE = 16 * 1024 * 1024;
+    // 两端的套接字缓冲区都很小，客户端写完请求后先等一会儿再读，下载因为背压停在半途，上传的响应在这期间产生
+    private static final int SOCKET_BUFFER_SIZE = 16 * 1024;
+    private static final int READ_DELAY_MILLIS = 200;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("upload-test");
+        ExecutorService diskExecutor = Executors.newFixedThreadPool(2);
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        int failures = 0;
+        try{
+            createText(directory.resolve("download.txt"), DOWNLOAD_SIZE);
+            Channel server = new ServerBootstrap()
+                    .group(group)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            // 与 HttpServer 相同的管道，上传的响应和其他响应一样经过 ChunkedWriteHandler 排队
+                            HttpServer.initPipeline(ch.pipeline(), HttpServer.DEFAULT_IDLE_TIMEOUT_SECONDS, directory, AGGREGATE_LIMIT, directory, diskExecutor);
+                        }
+                    })
+                    .childOption(ChannelOption.SO_SNDBUF, SOCKET_BUFFER_SIZE)
+                    .bind(PORT).sync().channel();
+
+            String requests = "GET " + HttpServer.STATIC_URI_PREFIX + "download.txt HTTP/1.1\r\nHost: 127.0.0.1\r\nAccept-Encoding: gzip\r\n\r\n"
+                    + upload("/a", 20) + chunkedUpload("/b", 12, 18) + upload("/c", 5) + upload("/d", 20) + upload("/e", 40);
+            List<String> expected = Arrays.asList("200 gunzipped " + DOWNLOAD_SIZE + " bytes", "201 Stored 20 bytes", "201 Stored 30 bytes", "200", "201 Stored 20 bytes", "201 Stored 40 bytes");
+            for (int round = 0; round < ROUNDS; round++) {
+                List<String> actual;
+                try (Socket socket = new Socket()) {
+                    socket.setReceiveBufferSize(SOCKET_BUFFER_SIZE);
+                    socket.connect(new InetSocketAddress("127.0.0.1", PORT));
+                    socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                    OutputStream out = socket.getOutputStream();
+                    out.write(requests.getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    Thread.sleep(READ_DELAY_MILLIS);
+                    actual = readResponses(socket.getInputStream(), expected.size());
+                }
+                if (!matches(expected, actual)) {
+                    failures++;
+                    System.out.println("round " + round + " FAILED: expected " + expected + ", got " + actual);
+                }
+            }
+            server.close().sync();
+        }finally {
+            group.shutdownGracefully().sync();
+            diskExecutor.shutdown();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println(failures == 0 ? ROUNDS + " rounds OK, responses in order" : failures + " of " + ROUNDS + " rounds FAILED");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static boolean matches(List<String> expected, List<String> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!actual.get(i).startsWith(expected.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String upload(String uri, int length) {
+        return "POST " + uri + " HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: " + length + "\r\n\r\n" + body(length);
+    }
+
+    private static String chunkedUpload(String uri, int... chunks) {
+        StringBuilder request = new StringBuilder("POST " + uri + " HTTP/1.1\r\nHost: 127.0.0.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+        for (int chunk : chunks) {
+            request.append(Integer.toHexString(chunk)).append("\r\n").append(body(chunk)).append("\r\n");
+        }
+        return request.append("0\r\n\r\n").toString();
+    }
+
+    private static void createText(Path path, int size) throws IOException {
+        StringBuilder text = new StringBuilder(size + 64);
+        while (text.length() < size) {
+            text.append("line ").append(text.length()).append('\n');
+        }
+        Files.write(path, text.substring(0, size).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String body(int length) {
+        char[] body = new char[length];
+        Arrays.fill(body, 'x');
+        return new String(body);
+    }
+
+    /**
+     * @return 每个响应的 "状态码 响应体"，gzip 压缩的响应体记为解压后的字节数；读超时时返回已读到的响应
+     */
+    private static List<String> readResponses(InputStream in, int count) throws IOException {
+        List<String> responses = new ArrayList<>();
+        try{
+            while (responses.size() < count) {
+                String status = readLine(in);
+                int contentLength = 0;
+                boolean chunked = false;
+                boolean gzip = false;
+                String line;
+                while (!(line = readLine(in)).isEmpty()) {
+                    if (line.regionMatches(true, 0, "content-length:", 0, 15)) {
+                        contentLength = Integer.parseInt(line.substring(15).trim());
+                    } else if (line.regionMatches(true, 0, "transfer-encoding:", 0, 18)) {
+                        chunked = line.substring(18).trim().equalsIgnoreCase("chunked");
+                    } else if (line.regionMatches(true, 0, "content-encoding:", 0, 17)) {
+                        gzip = line.substring(17).trim().equalsIgnoreCase("gzip");
+                    }
+                }
+                byte[] body = chunked ? readChunked(in) : readFully(in, contentLength);
+                String code = status.split(" ")[1];
+                responses.add(gzip ? code + " gunzipped " + gunzippedLength(body) + " bytes" : code + " " + new String(body, StandardCharsets.UTF_8));
+            }
+        }catch(IOException e){
+            responses.add(e.toString());
+        }
+        return responses;
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        for (int read = 0; read < length; ) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new IOException("connection closed");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private static byte[] readChunked(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int size;
+        while ((size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+            body.write(readFully(in, size));
+            readLine(in);
+        }
+        // trailer
+        String trailer;
+        do {
+            trailer = readLine(in);
+        } while (!trailer.isEmpty());
+        return body.toByteArray();
+    }
+
+    private static long gunzippedLength(byte[] body) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long length = 0;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                length += n;
+            }
+        }
+        return length;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,145 @@
+package cn.wanxh.http;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.stream.ChunkedWriteHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 02:30
+ * @Author: 阿左不是蜗牛
+ * @Description: HttpStaticFileHandler 发送文件的吞吐（GB/s）：
+ *  1. DefaultFileRegion（sendfile），文件内容不经过用户态；
+ *  2. ChunkedNioFile + ChunkedWriteHandler，不压缩，每块读到堆外缓冲区再写出；
+ *  3. ChunkedNioFile + ChunkedWriteHandler + gzip，文本文件，按文件字节数计算吞吐。
+ *  客户端用阻塞 Socket 发送 Connection: close 的请求，读到连接关闭为止；
+ *  客户端和服务端在同一台机器上，数据在页缓存中，测的是服务端发送路径的开销
+ */
+public class StaticFileBenchmark {
+
+    private static final int PORT = 10601;
+    private static final long BINARY_SIZE = 256L * 1024 * 1024;
+    private static final long TEXT_SIZE = 64L * 1024 * 1024;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("static-bench");
+        Path binary = root.resolve("data.bin");
+        Path text = root.resolve("data.txt");
+        try{
+            createBinary(binary, BINARY_SIZE);
+            createText(text, TEXT_SIZE);
+            run("sendfile (DefaultFileRegion)", root, true, "data.bin", false, BINARY_SIZE);
+            run("ChunkedNioFile", root, false, "data.bin", false, BINARY_SIZE);
+            run("ChunkedNioFile + gzip", root, true, "data.txt", true, TEXT_SIZE);
+        }finally {
+            Files.deleteIfExists(binary);
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(root);
+        }
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    private static void run(String name, Path root, boolean zeroCopy, String file, boolean gzip, long fileSize) throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try{
+            Channel server = new ServerBootstrap()
+                    .group(group)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            // 与 HttpServer 相同的顺序
+                            ch.pipeline()
+                                    .addLast("codec", new HttpServerCodec())
+                                    .addLast("compressor", new HttpStaticFileHandler.HttpFileContentCompressor())
+                                    .addLast("chunked", new ChunkedWriteHandler())
+                                    .addLast("aggregator", new HttpObjectAggregator(HttpServer.MAX_AGGREGATED_CONTENT_LENGTH))
+                                    .addLast("static", new HttpStaticFileHandler("/static/", root, zeroCopy));
+                        }
+                    })
+                    .bind(PORT).sync().channel();
+
+            String request = "GET /static/" + file + " HTTP/1.1\r\nHost: 127.0.0.1\r\nConnection: close\r\n"
+                    + (gzip ? "Accept-Encoding: gzip\r\n" : "") + "\r\n";
+            // 第一轮预热
+            fetch(request);
+            long received = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                received += fetch(request);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-30s %6.2f GB/s of file, %8.1f MB on the wire per request%n",
+                    name, fileSize * ROUNDS / (elapsed / 1e9) / 1e9, received / (double) ROUNDS / 1e6);
+            server.close().sync();
+        }finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+    /**
+     * @return 收到的字节数（含响应头）
+     */
+    private static long fetch(String request) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        long received = 0;
+        try (Socket socket = new Socket("127.0.0.1", PORT)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                received += n;
+            }
+        }
+        return received;
+    }
+
+    private static void createBinary(Path path, long size) throws IOException {
+        byte[] block = new byte[1024 * 1024];
+        new Random(1).nextBytes(block);
+        write(path, block, size);
+    }
+
+    private static void createText(Path path, long size) throws IOException {
+        StringBuilder block = new StringBuilder();
+        Random random = new Random(2);
+        while (block.length() < 1024 * 1024) {
+            block.append("line ").append(block.length()).append(": value=").append(random.nextInt(1000)).append('\n');
+        }
+        write(path, block.substring(0, 1024 * 1024).getBytes(StandardCharsets.US_ASCII), size);
+    }
+
+    private static void write(Path path, byte[] block, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long written = 0; written < size; written += block.length) {
+                ByteBuffer buffer = ByteBuffer.wrap(block);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+}
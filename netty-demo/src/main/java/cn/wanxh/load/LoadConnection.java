@@ -0,0 +1,256 @@
+package cn.wanxh.load;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 01:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 一个压测连接，所有状态只在所属的 EventLoop 中访问
+ *  闭环：始终保持 pipeline 个未完成的请求，收到一个响应再发一个；
+ *  开环：按固定间隔计划发送时间，到期就发送，未完成的请求达到 pipeline 时到期的请求在压测端排队，
+ *  延迟从计划发送时间算起，服务端变慢时排队的时间也计入延迟，不会因为压测端停下等待而漏记（协调遗漏）。
+ *  同一连接上的响应按请求顺序返回，计划/实际发送时间用定长的环形数组按 FIFO 对应。
+ *  连接被服务端关闭时，未完成的请求记为错误并立即重连，开环的计划发送时间不受影响。
+ *  重连后的新 Channel 仍使用同一个实例，所以标记为 Sharable，但同一时刻只在一个 Channel 中
+ */
+@ChannelHandler.Sharable
+final class LoadConnection extends ChannelInboundHandlerAdapter {
+
+    private static final long RECONNECT_DELAY_MILLIS = 100;
+
+    private final LoadGenerator run;
+    private final EventLoop eventLoop;
+    private final Bootstrap bootstrap;
+    private final LoadRecorder recorder;
+    private final int pipeline;
+    private final int index;
+
+    // 环形数组：未完成请求的计划发送时间和实际发送时间
+    private final long[] intendedTimes;
+    private final long[] sentTimes;
+    private int head;
+    private int inFlight;
+
+    // 开环：每个请求的间隔和下一个请求的计划发送时间
+    private final long interval;
+    private long nextIntended;
+    private boolean tickScheduled;
+
+    private Channel channel;
+    private boolean begun;
+    private boolean needsFlush;
+    private boolean stopped;
+    private boolean finished;
+
+    LoadConnection(LoadGenerator run, Bootstrap bootstrap, EventLoop eventLoop, int index) {
+        this.run = run;
+        this.eventLoop = eventLoop;
+        this.recorder = run.recorder(eventLoop);
+        this.pipeline = run.pipeline;
+        this.index = index;
+        this.intendedTimes = new long[pipeline];
+        this.sentTimes = new long[pipeline];
+        this.interval = run.isOpenLoop() ? Math.max(1, (long) (1e9 * run.connections / run.rate)) : 0;
+        // 固定在同一个 EventLoop 上，重连后状态仍然只有一个线程访问
+        this.bootstrap = bootstrap.clone(eventLoop).handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                run.protocol.initPipeline(ch.pipeline(), run.payload);
+                ch.pipeline().addLast(LoadConnection.this);
+            }
+        });
+    }
+
+    ChannelFuture connect() {
+        return bootstrap.connect(run.host, run.port).addListener((ChannelFutureListener) f -> {
+            if (f.isSuccess()) {
+                channel = f.channel();
+                if (begun) {
+                    resume(true);
+                }
+                return;
+            }
+            if (!begun || stopped) {
+                return;
+            }
+            recorder.errors++;
+            if (System.nanoTime() - run.endNanos < 0) {
+                eventLoop.schedule(this::connect, RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } else {
+                checkFinished();
+            }
+        });
+    }
+
+    EventLoop eventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * 开始压测，在 EventLoop 中调用；开环时各连接的第一个计划发送时间错开，避免同时发送
+     */
+    void begin() {
+        begun = true;
+        if (interval > 0) {
+            nextIntended = run.startNanos + index * interval / run.connections;
+        }
+        resume(true);
+    }
+
+    /**
+     * 压测结束，关闭连接，在 EventLoop 中调用
+     */
+    void stop() {
+        stopped = true;
+        recorder.unfinished += inFlight;
+        inFlight = 0;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void resume(boolean flush) {
+        if (stopped || channel == null || !channel.isActive()) {
+            return;
+        }
+        if (interval > 0) {
+            tick(flush);
+        } else {
+            fill(flush);
+        }
+    }
+
+    /**
+     * 闭环：补足未完成的请求
+     */
+    private void fill(boolean flush) {
+        long now = System.nanoTime();
+        while (inFlight < pipeline && now - run.endNanos < 0) {
+            send(now, now);
+        }
+        flushIfNeeded(flush);
+        checkFinished();
+    }
+
+    /**
+     * 开环：发送所有已经到期的请求，再按下一个计划发送时间定时
+     */
+    private void tick(boolean flush) {
+        long now = System.nanoTime();
+        while (inFlight < pipeline && nextIntended - now <= 0 && nextIntended - run.endNanos < 0) {
+            send(nextIntended, now);
+            nextIntended += interval;
+        }
+        flushIfNeeded(flush);
+        if (nextIntended - run.endNanos >= 0) {
+            checkFinished();
+            return;
+        }
+        // 未完成的请求已满时等待响应，收到响应后再发送到期的请求
+        if (inFlight < pipeline && !tickScheduled) {
+            tickScheduled = true;
+            eventLoop.schedule(() -> {
+                tickScheduled = false;
+                resume(true);
+            }, nextIntended - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void send(long intended, long now) {
+        int slot = (head + inFlight) % pipeline;
+        intendedTimes[slot] = intended;
+        sentTimes[slot] = now;
+        inFlight++;
+        channel.write(run.template.retainedDuplicate(), channel.voidPromise());
+        needsFlush = true;
+    }
+
+    private void flushIfNeeded(boolean flush) {
+        if (flush && needsFlush) {
+            needsFlush = false;
+            channel.flush();
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        boolean success;
+        try{
+            success = run.protocol.isSuccess(msg);
+        }finally {
+            ReferenceCountUtil.release(msg);
+        }
+        if (inFlight == 0) {
+            // 不是对请求的响应（比如连接被拒绝前的提示），忽略
+            return;
+        }
+        long now = System.nanoTime();
+        long intended = intendedTimes[head];
+        long sent = sentTimes[head];
+        head = (head + 1) % pipeline;
+        inFlight--;
+        // 预热期间计划发送的请求不计入统计
+        if (intended - run.measureStartNanos >= 0) {
+            if (success) {
+                recorder.responseTime.record(now - intended);
+                recorder.serviceTime.record(now - sent);
+            } else {
+                recorder.errors++;
+            }
+        }
+        resume(false);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        flushIfNeeded(true);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (stopped) {
+            return;
+        }
+        // 服务端关闭了连接，未完成的请求不会再有响应
+        recorder.errors += inFlight;
+        inFlight = 0;
+        head = 0;
+        channel = null;
+        if (System.nanoTime() - run.endNanos < 0) {
+            recorder.reconnects++;
+            connect();
+        } else {
+            checkFinished();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        recorder.errors++;
+        ctx.close();
+    }
+
+    private void checkFinished() {
+        if (finished || inFlight > 0) {
+            return;
+        }
+        boolean done = interval > 0 ? nextIntended - run.endNanos >= 0 : System.nanoTime() - run.endNanos >= 0;
+        if (done) {
+            finished = true;
+            run.connectionFinished();
+        }
+    }
+}
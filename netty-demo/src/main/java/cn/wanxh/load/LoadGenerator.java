@@ -0,0 +1,180 @@
+package cn.wanxh.load;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 01:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 基于 Netty 客户端 Bootstrap 的压测工具，可以压测 EchoServer（echo）、HttpServer（http）、Reactor/MultiReactor（line）
+ *  闭环（rate=0）：每个连接始终保持 pipeline 个未完成的请求，测的是最大吞吐，
+ *  延迟按预期请求间隔（默认取中位数）做协调遗漏修正；
+ *  开环（rate>0）：按固定的总速率发送，与服务端快慢无关，延迟从计划发送时间算起，本身就不受协调遗漏影响，
+ *  另外输出从实际发送算起的服务时间，两者的差就是压测端排队的时间。
+ *  发送调度依赖 EventLoop 的定时任务（精度约 1ms），开环的低延迟部分会偏大一些。
+ *  用法：java cn.wanxh.load.LoadGenerator protocol=http port=9991 connections=16 pipeline=1 payload=64 rate=20000 duration=10 warmup=2
+ */
+public class LoadGenerator {
+
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+
+    final LoadProtocol protocol;
+    final String host;
+    final int port;
+    final int connections;
+    final int pipeline;
+    final int payload;
+    // 所有连接合计的每秒请求数，0 表示闭环
+    final int rate;
+    final int threads;
+    final long warmupNanos;
+    final long durationNanos;
+    // 闭环延迟修正使用的预期请求间隔，0 表示取未修正延迟的中位数
+    final long expectedIntervalNanos;
+
+    ByteBuf template;
+    volatile long startNanos;
+    volatile long measureStartNanos;
+    volatile long endNanos;
+
+    private final Map<EventLoop, LoadRecorder> recorders = new ConcurrentHashMap<>();
+    private CountDownLatch finished;
+
+    LoadGenerator(Map<String, String> options) {
+        this.protocol = LoadProtocol.valueOf(options.getOrDefault("protocol", "echo").toUpperCase(Locale.ROOT));
+        this.host = options.getOrDefault("host", "127.0.0.1");
+        this.port = intOption(options, "port", protocol.defaultPort);
+        this.connections = intOption(options, "connections", 16);
+        this.pipeline = intOption(options, "pipeline", 1);
+        this.payload = protocol.payloadLength(intOption(options, "payload", 64));
+        this.rate = intOption(options, "rate", 0);
+        this.threads = intOption(options, "threads", Math.min(connections, Runtime.getRuntime().availableProcessors()));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(intOption(options, "warmup", 2));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(intOption(options, "duration", 10));
+        this.expectedIntervalNanos = TimeUnit.MICROSECONDS.toNanos(intOption(options, "expectedIntervalUs", 0));
+        if (connections <= 0 || pipeline <= 0 || payload < 0 || rate < 0 || threads <= 0 || durationNanos <= 0) {
+            throw new IllegalArgumentException("invalid options: " + options);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new ConcurrentHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("usage: LoadGenerator [protocol=echo|line|http] [host=127.0.0.1] [port=...] [connections=16] [pipeline=1]"
+                        + " [payload=64] [rate=0 (closed loop)] [threads=...] [warmup=2] [duration=10] [expectedIntervalUs=0]");
+                System.exit(1);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadGenerator(options).run();
+        // Netty 的 ObjectCleaner 线程不是守护线程
+        System.exit(0);
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    boolean isOpenLoop() {
+        return rate > 0;
+    }
+
+    LoadRecorder recorder(EventLoop eventLoop) {
+        return recorders.computeIfAbsent(eventLoop, loop -> new LoadRecorder());
+    }
+
+    void connectionFinished() {
+        finished.countDown();
+    }
+
+    void run() throws InterruptedException {
+        System.out.printf("%s %s:%d, %s, %d connections x pipeline %d, payload %d B, %d threads, warmup %ds, duration %ds%n",
+                protocol.name().toLowerCase(Locale.ROOT), host, port,
+                isOpenLoop() ? "open loop " + rate + " req/s" : "closed loop",
+                connections, pipeline, payload, threads,
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+
+        // 堆外的模板，写出时不需要再拷贝到堆外缓冲区
+        ByteBuf encoded = protocol.template(payload, host);
+        template = Unpooled.directBuffer(encoded.readableBytes()).writeBytes(encoded);
+        encoded.release();
+        finished = new CountDownLatch(connections);
+        EventLoopGroup group = new NioEventLoopGroup(threads, new DefaultThreadFactory("load"));
+        Bootstrap bootstrap = new Bootstrap()
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true);
+        List<LoadConnection> loadConnections = new ArrayList<>();
+        try{
+            for (int i = 0; i < connections; i++) {
+                EventLoop eventLoop = group.next();
+                LoadConnection connection = new LoadConnection(this, bootstrap, eventLoop, i);
+                ChannelFuture connect = connection.connect().await();
+                if (!connect.isSuccess()) {
+                    System.err.println("failed to connect to " + host + ":" + port + ": " + connect.cause());
+                    return;
+                }
+                loadConnections.add(connection);
+            }
+
+            // 所有连接建立后再开始计时
+            startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+            measureStartNanos = startNanos + warmupNanos;
+            endNanos = measureStartNanos + durationNanos;
+            for (LoadConnection connection : loadConnections) {
+                connection.eventLoop().execute(connection::begin);
+            }
+            long remaining = endNanos - System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+            if (!finished.await(remaining, TimeUnit.NANOSECONDS)) {
+                System.out.println("some requests did not complete within " + DRAIN_TIMEOUT_MILLIS + " ms after the end");
+            }
+            for (LoadConnection connection : loadConnections) {
+                connection.eventLoop().execute(connection::stop);
+            }
+        }finally {
+            // EventLoop 线程终止后再读取各线程写入的统计
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            template.release();
+        }
+        report();
+    }
+
+    private void report() {
+        LoadRecorder total = new LoadRecorder();
+        for (LoadRecorder recorder : recorders.values()) {
+            total.add(recorder);
+        }
+        long completed = total.responseTime.count();
+        double seconds = durationNanos / 1e9;
+        System.out.printf("throughput: %.0f req/s (%d completed), errors %d, reconnects %d, unfinished %d%n",
+                completed / seconds, completed, total.errors, total.reconnects, total.unfinished);
+        if (isOpenLoop()) {
+            System.out.println("response time (from intended send time): " + total.responseTime.summary());
+            System.out.println("service time  (from actual send time):   " + total.serviceTime.summary());
+        } else {
+            long expectedInterval = expectedIntervalNanos > 0 ? expectedIntervalNanos : total.serviceTime.percentile(0.5);
+            System.out.println("latency (raw):                           " + total.serviceTime.summary());
+            System.out.printf("latency (corrected, interval %6.1f us): %s%n",
+                    expectedInterval / 1000.0, total.serviceTime.corrected(expectedInterval).summary());
+        }
+    }
+}
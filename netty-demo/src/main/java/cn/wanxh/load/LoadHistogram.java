@@ -0,0 +1,134 @@
+package cn.wanxh.load;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 01:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 压测用的延迟直方图（纳秒），结构与 HdrHistogram 相同：
+ *  每个 2 的幂区间再均分为 128 个子桶，相对误差不超过 1%，覆盖 0 ~ Long.MAX_VALUE，记录时不分配对象。
+ *  只允许一个线程写，压测结束后再合并、读取。
+ *  与 reactor 包中常开的 LatencyHistogram 不同，这里精度更高，并支持协调遗漏（coordinated omission）修正
+ */
+final class LoadHistogram {
+
+    // 每个 2 的幂区间的子桶数 = 2^SUB_BUCKET_BITS
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    void record(long value) {
+        record(value, 1);
+    }
+
+    void record(long value, long n) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)] += n;
+        count += n;
+        sum += value * n;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * 与 HdrHistogram 的 recordValueWithExpectedInterval 相同：
+     * 值超过预期的请求间隔时，补记 value - interval, value - 2 * interval, ... 这些因为压测端在等待而没有发出的请求本应得到的延迟
+     */
+    void recordCorrected(long value, long expectedInterval, long n) {
+        record(value, n);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            record(missing, n);
+        }
+    }
+
+    /**
+     * 按预期的请求间隔修正后的副本，用于闭环压测（HdrHistogram 的 copyCorrectedForCoordinatedOmission）
+     */
+    LoadHistogram corrected(long expectedInterval) {
+        LoadHistogram copy = new LoadHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                copy.recordCorrected(Math.min(highestValueOf(i), max), expectedInterval, counts[i]);
+            }
+        }
+        return copy;
+    }
+
+    void add(LoadHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶内的最大值，用作该桶内所有值的估计（偏大）
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+        return lowest + width - 1;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    long percentile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * quantile));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 以微秒输出常用分位数
+     */
+    String summary() {
+        return String.format("p50 %8.1f  p90 %8.1f  p99 %8.1f  p99.9 %8.1f  max %9.1f  mean %8.1f (us, %d samples)",
+                percentile(0.50) / 1000.0, percentile(0.90) / 1000.0, percentile(0.99) / 1000.0,
+                percentile(0.999) / 1000.0, max / 1000.0, mean() / 1000.0, count);
+    }
+}
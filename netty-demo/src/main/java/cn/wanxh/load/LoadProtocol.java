@@ -0,0 +1,161 @@
+package cn.wanxh.load;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 01:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 压测目标的协议：请求预先编码成一个 ByteBuf 模板，每次发送它的 retainedDuplicate()，不重复编码；
+ *  pipeline 中的解码器把响应切分成完整的消息交给 LoadConnection。三种协议在同一连接上都按请求顺序响应
+ */
+enum LoadProtocol {
+
+    /**
+     * EchoServer：定长 10 字节的请求，响应是 ResponseSampleEncoder 编码的 ResponseSample
+     */
+    ECHO(9999) {
+        @Override
+        int payloadLength(int requested) {
+            return REQUEST_LENGTH;
+        }
+
+        @Override
+        ByteBuf template(int payload, String host) {
+            return Unpooled.wrappedBuffer(filler(REQUEST_LENGTH));
+        }
+
+        @Override
+        void initPipeline(ChannelPipeline pipeline, int payload) {
+            pipeline.addLast(new EchoResponseDecoder());
+        }
+    },
+
+    /**
+     * Reactor / MultiReactor：以 \r\n 结尾的一行，原样返回并带上提示符 "\r\nreactor>"
+     */
+    LINE(10086) {
+        @Override
+        ByteBuf template(int payload, String host) {
+            byte[] line = Arrays.copyOf(filler(payload), payload + 2);
+            line[payload] = '\r';
+            line[payload + 1] = '\n';
+            return Unpooled.wrappedBuffer(line);
+        }
+
+        @Override
+        void initPipeline(ChannelPipeline pipeline, int payload) {
+            pipeline.addLast(new DelimiterBasedFrameDecoder(payload + 64, Unpooled.wrappedBuffer(PROMPT)));
+        }
+    },
+
+    /**
+     * HttpServer：payload 为 0 时发送 GET，否则 POST 指定长度的请求体，keep-alive
+     */
+    HTTP(9991) {
+        @Override
+        ByteBuf template(int payload, String host) {
+            StringBuilder head = new StringBuilder()
+                    .append(payload == 0 ? "GET" : "POST").append(" /load HTTP/1.1\r\n")
+                    .append("Host: ").append(host).append("\r\n")
+                    .append("Connection: keep-alive\r\n");
+            if (payload > 0) {
+                head.append("Content-Type: text/plain\r\n")
+                        .append("Content-Length: ").append(payload).append("\r\n");
+            }
+            head.append("\r\n");
+            return Unpooled.wrappedBuffer(head.toString().getBytes(StandardCharsets.US_ASCII), filler(payload));
+        }
+
+        @Override
+        void initPipeline(ChannelPipeline pipeline, int payload) {
+            // 请求已经预先编码，只需要响应解码器
+            pipeline.addLast(new HttpResponseDecoder(), new HttpObjectAggregator(MAX_HTTP_RESPONSE_LENGTH));
+        }
+
+        @Override
+        boolean isSuccess(Object response) {
+            return ((FullHttpResponse) response).status().code() < 400;
+        }
+    };
+
+    private static final int REQUEST_LENGTH = 10;
+    private static final int MAX_HTTP_RESPONSE_LENGTH = 1024 * 1024;
+    private static final byte[] PROMPT = "reactor>".getBytes(StandardCharsets.US_ASCII);
+
+    final int defaultPort;
+
+    LoadProtocol(int defaultPort) {
+        this.defaultPort = defaultPort;
+    }
+
+    /**
+     * 实际使用的请求内容长度，协议固定长度时忽略配置
+     */
+    int payloadLength(int requested) {
+        return requested;
+    }
+
+    /**
+     * 预先编码好的请求，只读，发送时用 retainedDuplicate()
+     */
+    abstract ByteBuf template(int payload, String host);
+
+    abstract void initPipeline(ChannelPipeline pipeline, int payload);
+
+    boolean isSuccess(Object response) {
+        return true;
+    }
+
+    private static byte[] filler(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    /**
+     * ResponseSample 的帧：[int 长度][code][int 长度][data][long 时间戳]，长度为 -1 表示 null
+     */
+    private static final class EchoResponseDecoder extends ByteToMessageDecoder {
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            int start = in.readerIndex();
+            int index = skipString(in, start);
+            if (index < 0) {
+                return;
+            }
+            index = skipString(in, index);
+            if (index < 0 || in.writerIndex() - index < 8) {
+                return;
+            }
+            out.add(in.readRetainedSlice(index + 8 - start));
+        }
+
+        /**
+         * @return 字符串之后的下标，数据不完整时返回 -1
+         */
+        private static int skipString(ByteBuf in, int index) {
+            if (in.writerIndex() - index < 4) {
+                return -1;
+            }
+            int length = Math.max(0, in.getInt(index));
+            index += 4;
+            return in.writerIndex() - index < length ? -1 : index + length;
+        }
+    }
+}
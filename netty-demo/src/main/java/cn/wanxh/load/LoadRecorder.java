@@ -0,0 +1,28 @@
+package cn.wanxh.load;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/18 01:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 一个 EventLoop 上所有压测连接的统计，只由该 EventLoop 线程写，压测结束、线程终止后再合并
+ */
+final class LoadRecorder {
+
+    // 从计划发送时间算起（开环压测中包含压测端排队和重连的等待，即协调遗漏修正后的延迟）
+    final LoadHistogram responseTime = new LoadHistogram();
+    // 从实际写出请求算起
+    final LoadHistogram serviceTime = new LoadHistogram();
+
+    long errors;
+    long reconnects;
+    // 压测结束时仍未收到响应的请求
+    long unfinished;
+
+    void add(LoadRecorder other) {
+        responseTime.add(other.responseTime);
+        serviceTime.add(other.serviceTime);
+        errors += other.errors;
+        reconnects += other.reconnects;
+        unfinished += other.unfinished;
+    }
+}
@@ -0,0 +1,324 @@
+package cn.wanxh.reactor;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 20:00
+ * @Author: 阿左不是蜗牛
+ * @Description: 接收连接的准入控制，每个服务一个，SO_REUSEPORT 模式下由多个 Acceptor 线程共享
+ *  1. 批量接收：一次唤醒最多接收 maxAcceptsPerWakeup 个连接，剩余的留在 backlog 中，
+ *     不会因为重连风暴长时间占住 Reactor 线程，也不会每个连接都回到 select() 一次；
+ *  2. 最大连接数：超过后接收并立即以 RST 关闭（SO_LINGER=0），客户端快速失败，不占用服务端资源；
+ *  3. 令牌桶限速：令牌用完后暂停关注 OP_ACCEPT，到有令牌时再恢复，期间新连接留在内核 backlog 中。
+ *  计数代替逐个连接的日志，通过 JMX 发布。
+ */
+final class AcceptControl implements AcceptControlMXBean {
+
+    static final int DEFAULT_MAX_ACCEPTS_PER_WAKEUP = 64;
+    static final int DEFAULT_BACKLOG = 1024;
+
+    // accept() 出错（如文件描述符耗尽）后暂停接收的时间，避免 OP_ACCEPT 持续就绪导致空转
+    static final long ACCEPT_ERROR_PAUSE_MILLIS = 100;
+
+    /**
+     * 把接收到的连接注册到某个 Reactor 上
+     */
+    interface Registrar {
+        void register(SocketChannel socketChannel) throws IOException;
+    }
+
+    private volatile int maxAcceptsPerWakeup = DEFAULT_MAX_ACCEPTS_PER_WAKEUP;
+    private volatile int maxConnections;
+    private volatile int backlog = DEFAULT_BACKLOG;
+
+    // 令牌桶，acceptsPerSecond 为 0 表示不限速；由 this 保护
+    private int acceptsPerSecond;
+    private int burst;
+    private double tokens;
+    private long lastRefill;
+    private volatile boolean rateLimited;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong batchLimitHits = new AtomicLong();
+    private final AtomicLong acceptErrors = new AtomicLong();
+
+    private ObjectName objectName;
+
+    /**
+     * 处理一次 OP_ACCEPT 就绪：在许可范围内批量接收，超过最大连接数的立即关闭
+     * @return 需要暂停接收的毫秒数，0 表示不需要暂停
+     */
+    long accept(ServerSocketChannel serverSocketChannel, Registrar registrar) {
+        int cap = maxAcceptsPerWakeup;
+        int permits = acquirePermits(cap);
+        int acceptedNow = 0;
+        try{
+            while (acceptedNow < permits) {
+                // 非阻塞模式下，没有连接直接返回 null
+                SocketChannel socketChannel = serverSocketChannel.accept();
+                if (socketChannel == null) {
+                    break;
+                }
+                acceptedNow++;
+                if (!tryAdmit()) {
+                    reject(socketChannel);
+                    continue;
+                }
+                try{
+                    registrar.register(socketChannel);
+                }catch(IOException e){
+                    // 连接在注册前已经失效
+                    connectionClosed();
+                    closeQuietly(socketChannel);
+                }
+            }
+        }catch(IOException e){
+            acceptErrors.incrementAndGet();
+            return ACCEPT_ERROR_PAUSE_MILLIS;
+        }finally {
+            releasePermits(permits - acceptedNow);
+        }
+
+        if (acceptedNow < permits) {
+            // backlog 已经取空
+            return 0;
+        }
+        if (permits == cap) {
+            // 达到单次上限，剩余的连接等下一轮 select()
+            batchLimitHits.incrementAndGet();
+            return 0;
+        }
+        // 令牌用完，可能还有连接在 backlog 中
+        throttled.incrementAndGet();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanosUntilPermit() + 999_999));
+    }
+
+    /**
+     * 最大连接数以内时计入活跃连接，返回 false 表示应当拒绝
+     */
+    boolean tryAdmit() {
+        int max = maxConnections;
+        for (;;) {
+            int current = connections.get();
+            if (max > 0 && current >= max) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                accepted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 已接收的连接关闭时调用
+     */
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * 立即关闭：SO_LINGER=0 发送 RST，服务端不进入 TIME_WAIT
+     */
+    static void reject(SocketChannel socketChannel) {
+        try{
+            socketChannel.setOption(StandardSocketOptions.SO_LINGER, 0);
+        }catch(IOException e){
+            // 忽略，仍然关闭
+        }
+        closeQuietly(socketChannel);
+    }
+
+    private static void closeQuietly(SocketChannel socketChannel) {
+        try{
+            socketChannel.close();
+        }catch(IOException e){
+        }
+    }
+
+    private int acquirePermits(int cap) {
+        if (!rateLimited) {
+            return cap;
+        }
+        synchronized (this) {
+            refill(System.nanoTime());
+            int permits = (int) Math.min(cap, Math.floor(tokens));
+            tokens -= permits;
+            return permits;
+        }
+    }
+
+    private void releasePermits(int unused) {
+        if (!rateLimited || unused <= 0) {
+            return;
+        }
+        synchronized (this) {
+            tokens = Math.min(burst, tokens + unused);
+        }
+    }
+
+    private synchronized long nanosUntilPermit() {
+        if (acceptsPerSecond == 0) {
+            return 0;
+        }
+        refill(System.nanoTime());
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) ((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / acceptsPerSecond);
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        lastRefill = now;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * (double) acceptsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * 注册到平台 MBeanServer，失败时只打印日志
+     */
+    void register(int port) {
+        try{
+            ObjectName on = new ObjectName(ReactorMetrics.DOMAIN + ":type=Acceptor,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        }catch(JMException e){
+            System.err.println("failed to register accept control MBean for port " + port + ": " + e);
+        }
+    }
+
+    void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }catch(JMException e){
+            System.err.println("failed to unregister accept control MBean: " + e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    @Override
+    public long getBatchLimitHits() {
+        return batchLimitHits.get();
+    }
+
+    @Override
+    public long getAcceptErrors() {
+        return acceptErrors.get();
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * 监听 socket 的 backlog，绑定端口前设置才生效
+     */
+    void setBacklog(int backlog) {
+        if (backlog <= 0) {
+            throw new IllegalArgumentException("backlog: " + backlog + " (expected: > 0)");
+        }
+        this.backlog = backlog;
+    }
+
+    @Override
+    public int getMaxAcceptsPerWakeup() {
+        return maxAcceptsPerWakeup;
+    }
+
+    @Override
+    public void setMaxAcceptsPerWakeup(int maxAcceptsPerWakeup) {
+        if (maxAcceptsPerWakeup <= 0) {
+            throw new IllegalArgumentException("maxAcceptsPerWakeup: " + maxAcceptsPerWakeup + " (expected: > 0)");
+        }
+        this.maxAcceptsPerWakeup = maxAcceptsPerWakeup;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @Override
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("maxConnections: " + maxConnections + " (expected: >= 0)");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    @Override
+    public synchronized int getAcceptsPerSecond() {
+        return acceptsPerSecond;
+    }
+
+    @Override
+    public synchronized int getAcceptBurst() {
+        return burst;
+    }
+
+    @Override
+    public synchronized void setAcceptRateLimit(int acceptsPerSecond, int burst) {
+        if (acceptsPerSecond < 0) {
+            throw new IllegalArgumentException("acceptsPerSecond: " + acceptsPerSecond + " (expected: >= 0)");
+        }
+        if (acceptsPerSecond > 0 && burst <= 0) {
+            throw new IllegalArgumentException("burst: " + burst + " (expected: > 0)");
+        }
+        this.acceptsPerSecond = acceptsPerSecond;
+        this.burst = acceptsPerSecond > 0 ? burst : 0;
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+        this.rateLimited = acceptsPerSecond > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "AcceptControl(connections: " + getConnections()
+                + ", accepted: " + getAccepted()
+                + ", rejected: " + getRejected()
+                + ", throttled: " + getThrottled()
+                + ", batchLimitHits: " + getBatchLimitHits()
+                + ", acceptErrors: " + getAcceptErrors() + ')';
+    }
+}
@@ -0,0 +1,63 @@
+package cn.wanxh.reactor;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 19:50
+ * @Author: 阿左不是蜗牛
+ * @Description: 服务接收连接的限制和计数，每个服务注册一个，
+ *  ObjectName 形如 cn.wanxh.reactor:type=Acceptor,port=10088；限制可以在运行时调整
+ */
+public interface AcceptControlMXBean {
+
+    /**
+     * 已接收并注册的连接数
+     */
+    long getAccepted();
+
+    /**
+     * 超过最大连接数被立即关闭的连接数
+     */
+    long getRejected();
+
+    /**
+     * 因为接收速率限制暂停接收的次数，暂停期间新连接留在内核的 backlog 中
+     */
+    long getThrottled();
+
+    /**
+     * 一次唤醒接收满 maxAcceptsPerWakeup 个连接的次数，剩余的连接留在 backlog 中等下一轮
+     */
+    long getBatchLimitHits();
+
+    /**
+     * accept() 抛出异常的次数（如文件描述符耗尽）
+     */
+    long getAcceptErrors();
+
+    /**
+     * 当前活跃的连接数
+     */
+    int getConnections();
+
+    int getBacklog();
+
+    int getMaxAcceptsPerWakeup();
+
+    void setMaxAcceptsPerWakeup(int maxAcceptsPerWakeup);
+
+    /**
+     * 最大连接数，0 表示不限制
+     */
+    int getMaxConnections();
+
+    void setMaxConnections(int maxConnections);
+
+    /**
+     * 每秒最多接收的连接数，0 表示不限制
+     */
+    int getAcceptsPerSecond();
+
+    int getAcceptBurst();
+
+    void setAcceptRateLimit(int acceptsPerSecond, int burst);
+}
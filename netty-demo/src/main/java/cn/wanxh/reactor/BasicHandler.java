@@ -7,6 +7,8 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @program: netty-wanxh
@@ -16,22 +18,64 @@ import java.nio.charset.StandardCharsets;
  */
 public class BasicHandler implements  Runnable{
 
-    private static final int MAXIN = 1024;
-    private static final int MAXOUT = 1024;
+    static final int MAXIN = 1024;
+
+    // 单行请求的最大长度，超过后视为非法请求直接关闭连接
+    static final int MAX_LINE = BufferPool.SIZE_CLASSES[BufferPool.SIZE_CLASSES.length - 1];
+
+    // 每个响应后面追加的提示符
+    static final byte[] PROMPT = "\r\nreactor>".getBytes(StandardCharsets.UTF_8);
 
     public SocketChannel socketChannel;
 
     public SelectionKey selectionKey;
 
-    ByteBuffer input = ByteBuffer.allocate(MAXIN);
-    ByteBuffer output = ByteBuffer.allocate(MAXOUT);
+    // 连接关闭时的回调，由所属的 Reactor 设置（如维护从Reactor上的连接计数）
+    Runnable closeListener;
+
+    private boolean closed;
+
+    // 所属的 Reactor，业务线程通过它把后续操作（发送、关闭）交回 Reactor 线程执行
+    final EventLoop eventLoop;
+
+    // 所属 Reactor 的缓冲池，input/output 只在读写进行时从池中借用，空闲时为 null
+    final BufferPool bufferPool;
+
+    // 所属 Reactor 的运行指标
+    final ReactorMetrics metrics;
+
+    // input 中可能残留一个不完整的行，残留期间不归还
+    ByteBuffer input;
+
+    // 读缓冲区大小的自适应预测和每次读事件的读取预算
+    final RecvBufferAllocator.Handle recvHandle;
 
-    // 定义服务的逻辑状态
+    // 一次读取中解析出的完整请求，按到达顺序处理
+    final List<String> requests = new ArrayList<>();
+
+    // 待发送的响应，每个响应一个缓冲区，聚集写（gathering write）发出，写不完时保持关注 OP_WRITE
+    final OutboundQueue outbound;
+
+    // 收到空行或 ctrl+c，发送完已有的响应后关闭连接
+    boolean closeRequested;
+
+    // 最后一次读到数据、写出数据的时间（System.nanoTime()），只在 Reactor 线程中更新，用于空闲连接检测
+    long lastReadTime;
+    long lastWriteTime;
+
+    // 在空闲检测时间轮上的位置，由 IdleTimeoutWheel 维护，只在 Reactor 线程中访问
+    IdleTimeoutWheel idleWheel;
+    BasicHandler idlePrev;
+    BasicHandler idleNext;
+    long idleDeadline;
+    int idleSlot;
+
+    // 定义服务的逻辑状态：READING 可以继续读取请求，SENDING 发送完剩余响应后关闭连接
     static final int READING = 0, SENDING = 1, CLOSED = 2;
-    int state = READING;
+    volatile int state = READING;
 
-    public BasicHandler(SocketChannel socketChannel, Selector selector) throws IOException {
-        this.socketChannel = socketChannel;
+    public BasicHandler(SocketChannel socketChannel, Selector selector, EventLoop eventLoop) throws IOException {
+        this(socketChannel, eventLoop);
         socketChannel.configureBlocking(false); // 设置成非阻塞
 
         // 将该通道注册到选择器上，并关注Read事件
@@ -43,136 +87,349 @@ public class BasicHandler implements  Runnable{
         selector.wakeup();
     }
 
-    public BasicHandler(SocketChannel socketChannel) {
+    public BasicHandler(SocketChannel socketChannel, EventLoop eventLoop) {
         this.socketChannel = socketChannel;
+        this.eventLoop = eventLoop;
+        this.bufferPool = eventLoop.bufferPool();
+        this.metrics = eventLoop.metrics();
+        this.recvHandle = eventLoop.recvBufferAllocator().newHandle();
+        this.outbound = new OutboundQueue(bufferPool);
     }
 
     @Override
     public void run() {
         try{
-            if (state == READING) {
-                read();
-            }else if (state == SENDING) {
+            // 读写可以同时就绪：先写出积压的响应，再读取新的请求
+            if (selectionKey.isWritable()) {
                 send();
             }
+            if (!closeRequested && selectionKey.isValid() && selectionKey.isReadable()) {
+                read();
+            }
+        }catch(EOFException e){
+            // 客户端关闭了连接
+            close();
         }catch(Exception e){
+            metrics.handlerException();
             // 关闭连接
+            close();
+        }
+    }
+
+    /**
+     * 关闭连接，可重复调用；只有第一次调用会触发 closeListener
+     */
+    protected void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            state = CLOSED;
             try{
                 socketChannel.close();
             }catch(IOException ex){
-
             }
+            // 从空闲检测中移除
+            if (idleWheel != null) {
+                idleWheel.remove(this);
+            }
+            // 归还借用中的缓冲区
+            bufferPool.release(input);
+            input = null;
+            outbound.release();
+        }
+        if (closeListener != null) {
+            closeListener.run();
         }
     }
 
     /**
-     * 从通道读取字节
+     * 服务关闭时由 Reactor 线程调用：不再读取新的请求，已读取的请求处理完、响应全部写出后关闭连接，
+     * 与客户端发送空行的效果相同
+     */
+    void drain() {
+        if (state == CLOSED) {
+            return;
+        }
+        closeRequested = true;
+        try{
+            send();
+        }catch(IOException e){
+            close();
+        }
+    }
+
+    /**
+     * 从通道读取字节：上一次读取填满了缓冲区时继续读，直到读完或用完读取预算，
+     * 每读到完整的请求就交给 requestsReceived() 处理，读事件结束后统一写出一次
      * @throws IOException
      */
     protected void read() throws IOException {
-        input.clear();
-        // 从通道读取
-        int n = socketChannel.read(input);
+        boolean received = false;
+        int n;
+        try{
+            recvHandle.reset();
+            do {
+                // 从通道读取
+                ByteBuffer buffer = prepareInput();
+                int attempted = buffer.remaining();
+                n = socketChannel.read(buffer);
+                recvHandle.lastBytesRead(n, attempted);
+                if (n <= 0) {
+                    break;
+                }
+                lastReadTime = System.nanoTime();
+                metrics.bytesRead(n);
+
+                // 如果读取了完整的数据（可能是多个请求）
+                if (inputIsComplete(n)) {
+                    received = true;
+                    requestsReceived();
+                }
+                // 发送队列超过高水位、收到关闭请求时停止读取
+            } while (recvHandle.continueReading() && !closeRequested && readable());
+            recvHandle.readComplete();
+
+            if (received && state != CLOSED) {
+                // 立即尝试写出，写不完时 send() 会关注 OP_WRITE
+                send();
+            }
+        }finally {
+            // 没有残留的半行数据时缓冲区立即归还
+            if (input != null && input.position() == 0) {
+                releaseInput();
+            }
+        }
 
-        // 如果读取了完整的数据
-        if (inputIsComplete(n)){
-            // 业务处理
-            process();
+        if (n < 0) {
+            // -1 客户端关闭了连接，已读到的请求的响应在上面已经尝试写出
+            throw new EOFException();
+        }
+    }
 
-            // 待发送的数据已经放入发送缓冲区中
+    /**
+     * 一次读取中解析出了完整的请求（在 requests 中），可能是一次读事件中的第 N 次读取
+     */
+    protected void requestsReceived() throws IOException {
+        // 业务处理
+        process();
+
+        // 待发送的数据已经放入发送队列中，收到关闭请求时等待发送完毕后关闭
+        if (closeRequested) {
+            state = SENDING;
+        }
+    }
 
-            // 更改服务的逻辑状态以及要处理的事件类型
-            selectionKey.interestOps(SelectionKey.OP_WRITE);
+    /**
+     * 借用读缓冲区，大小由 recvHandle 预测；
+     * 残留的半行已经占满缓冲区，或预测的大小变大时，换一个更大规格的缓冲区
+     */
+    ByteBuffer prepareInput() throws IOException {
+        int guess = recvHandle.guess();
+        if (input == null) {
+            input = bufferPool.acquire(guess);
+        } else if (!input.hasRemaining() || input.capacity() < guess) {
+            if (!input.hasRemaining() && input.capacity() >= MAX_LINE) {
+                throw new IOException("request line exceeds " + MAX_LINE + " bytes");
+            }
+            int capacity = input.hasRemaining() ? guess : Math.max(guess, input.capacity() * 2);
+            ByteBuffer larger = bufferPool.acquire(capacity);
+            input.flip();
+            larger.put(input);
+            bufferPool.release(input);
+            input = larger;
         }
+        return input;
+    }
+
+    void releaseInput() {
+        bufferPool.release(input);
+        input = null;
+    }
 
+    /**
+     * 是否继续读取新的请求，发送队列超过高水位时暂停读取（背压）
+     */
+    protected boolean readable() {
+        return state == READING && !closeRequested && outbound.isWritable();
     }
 
+    /**
+     * 已读取的请求是否都已处理完毕，处理完毕且响应全部写出后才能关闭连接
+     */
+    protected boolean requestsDone() {
+        return true;
+    }
+
+    /**
+     * 根据当前状态更新关注的事件（只能由 Reactor 线程调用）：
+     *  可以继续读取时关注 OP_READ；
+     *  发送队列非空或等待关闭时关注 OP_WRITE，直到全部写出
+     */
+    void updateInterest() {
+        if (!selectionKey.isValid()) {
+            return;
+        }
+        int ops = 0;
+        if (readable()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (!outbound.isEmpty() || (closeRequested && requestsDone())) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (selectionKey.interestOps() != ops) {
+            selectionKey.interestOps(ops);
+        }
+    }
 
-    // 缓存每次读取的内容
-    StringBuilder request = new StringBuilder();
 
     /**
-     * 当读取到 \r\n 时表示结束
+     * 从 input 中切分出所有以 \n 结尾的完整请求（\r\n 中的 \r 会被去掉），
+     * 末尾不完整的行保留在 input 中，等待下一次读取
      * @param bytes 读取的字节数，-1 通常是连接被关闭，0 非阻塞模式可能返回
      * @throws IOException
      */
     protected boolean inputIsComplete(int bytes) throws IOException {
-        if (bytes > 0) {
-            input.flip(); // 切换成读取模式
-            while (input.hasRemaining()) {
-                byte ch = input.get();
-
-                if (ch == 3) { // ctrl+c 关闭连接
-                    state = CLOSED;
-                    return true;
-                } else if (ch == '\r') { // continue
-                } else if (ch == '\n') {
-                    // 读取到了 \r\n 读取结束
-                    state = SENDING;  // 更新为发送状态
-                    return true;
+        if (bytes == -1) {
+            // -1 客户端关闭了连接
+            throw new EOFException();
+        }
+        input.flip(); // 切换成读取模式
+        int start = input.position();
+        int limit = input.limit();
+        while (start < limit && !closeRequested) {
+            int end = indexOfDelimiter(input, start, limit);
+            if (end < 0) {
+                break;
+            }
+            if (input.get(end) == 3) { // ctrl+c 关闭连接
+                closeRequested = true;
+            } else {
+                String line = decodeLine(input, start, end);
+                if (line.isEmpty()) {
+                    // 用户只敲了回车，断开连接
+                    closeRequested = true;
                 } else {
-                    request.append((char)ch);
+                    requests.add(line);
                 }
             }
-        } else if (bytes == -1) {
-            // -1 客户端关闭了连接
-            throw new EOFException();
-        } else {} // bytes == 0 继续读取
-        return false;
+            start = end + 1;
+        }
+        input.position(closeRequested ? limit : start);
+        input.compact(); // 残留的半行移到缓冲区头部，切换回写模式
+
+        return !requests.isEmpty() || closeRequested;
     }
 
+    private static final long LF_PATTERN = compilePattern((byte) '\n');
+    private static final long ETX_PATTERN = compilePattern((byte) 3);
 
     /**
-     * 业务处理
+     * 查找 [from, to) 中第一个 \n 或 ctrl+c，按 8 字节一组批量比较，不存在时返回 -1
+     */
+    static int indexOfDelimiter(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        // ByteBuffer 默认大端序，低地址的字节位于 long 的高位
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = buffer.getLong(i);
+            long match = matches(word, LF_PATTERN) | matches(word, ETX_PATTERN);
+            if (match != 0) {
+                return i + (Long.numberOfLeadingZeros(match) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == 3) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long compilePattern(byte b) {
+        return (b & 0xFFL) * 0x0101010101010101L;
+    }
+
+    /**
+     * word 中与 pattern 相等的字节，其最高位置 1，其余为 0
+     */
+    private static long matches(long word, long pattern) {
+        long input = word ^ pattern;
+        long tmp = (input & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL;
+        return ~(tmp | input | 0x7F7F7F7F7F7F7F7FL);
+    }
+
+    private static String decodeLine(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        ByteBuffer line = buffer.duplicate();
+        line.limit(end);
+        line.position(start);
+        line.get(bytes); // 整行一次拷贝
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * 业务处理：依次处理本次解析出的所有请求，响应按请求顺序排队
      * @throws EOFException
      */
     protected void process() throws EOFException {
         if (state == CLOSED) {
             throw new EOFException();
-        }else if (state == SENDING) {
-            String requestContent = request.toString(); // 请求内容
-            byte[] response = requestContent.getBytes(StandardCharsets.UTF_8);
-            // 模拟输出响应
-            output.put(response);
         }
+        for (String request : requests) {
+            respond(request);
+        }
+        requests.clear();
     }
 
-
-    protected void send() throws IOException{
-        int written = -1;
-        output.flip(); // 切换到读取模式，判断是否有数据要发送
-        if (output.hasRemaining()) {
-            written = socketChannel.write(output);
+    /**
+     * 处理单个请求并把响应放入发送队列
+     */
+    void respond(String request) {
+        // 业务线程处理期间 Reactor 线程可能已经关闭了连接，不再借用缓冲区
+        if (state == CLOSED) {
+            return;
         }
-
-        // 检查连接是否处理完毕，是否断开连接
-        if (outputIsComplete(written)) {
-            selectionKey.channel().close();
-        }else {
-            // 否则继续读取
-            state = READING;
-            // 把提示信息发到界面
-            socketChannel.write(ByteBuffer.wrap("\r\nreactor>".getBytes()));
-            selectionKey.interestOps(SelectionKey.OP_READ);
+        byte[] response = handle(request);
+        // 按响应大小从池中借用发送缓冲区，提示符随响应一起发送
+        ByteBuffer buffer = bufferPool.acquire(response.length + PROMPT.length);
+        buffer.put(response).put(PROMPT).flip();
+        if (!outbound.add(buffer)) {
+            // 检查之后连接被关闭，发送队列已经归还过所有缓冲区，这个由自己归还
+            bufferPool.release(buffer);
         }
+    }
 
+    /**
+     * 处理单个请求，模拟输出响应：原样返回
+     */
+    protected byte[] handle(String request) {
+        return request.getBytes(StandardCharsets.UTF_8);
     }
 
+
     /**
-     * 当输入一个空行，表示连接可以关闭了
-     * @param written
-     * @return
+     * 写出发送队列中的数据，socket 写满时保留剩余部分并继续关注 OP_WRITE
      */
-    private boolean outputIsComplete(int written) {
-        if (written <= 0) {
-            // 用户只敲了回车，断开连接
-            return true;
+    protected void send() throws IOException{
+        long written = outbound.write(socketChannel);
+        if (written > 0) {
+            lastWriteTime = System.nanoTime();
+            metrics.bytesWritten(written);
+        }
+
+        // 检查连接是否处理完毕，是否断开连接
+        if (closeRequested && outbound.isEmpty() && requestsDone()) {
+            close();
+        }else {
+            updateInterest();
         }
 
-        // 清空旧数据，接着处理后续的请求
-        output.clear();
-        request.delete(0, request.length());
-        return false;
     }
 
 }
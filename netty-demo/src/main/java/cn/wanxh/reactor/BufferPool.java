@@ -0,0 +1,158 @@
+package cn.wanxh.reactor;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 10:20
+ * @Author: 阿左不是蜗牛
+ * @Description: 直接内存缓冲池，每个 Reactor 持有一个
+ *  连接只在读写进行时借用缓冲区，空闲后立即归还，空闲连接不再占用内存；
+ *  使用直接内存，SocketChannel 读写时省去 JDK 内部临时直接缓冲区的拷贝。
+ *  缓冲区按规格分级（1K/4K/16K/64K），池中的直接内存总量不超过 maxBytes，
+ *  超出上限或超过最大规格的申请退化为普通堆缓冲区，归还时直接丢弃。
+ */
+public class BufferPool {
+
+    // 缓冲区规格，从小到大
+    static final int[] SIZE_CLASSES = {1024, 4 * 1024, 16 * 1024, 64 * 1024};
+
+    // 默认每个池最多持有 64MB 直接内存
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+
+    // 每个规格一个空闲队列；业务线程也可能归还缓冲区，所以使用并发队列
+    private final Queue<ByteBuffer>[] freeLists;
+
+    // 池已经申请的直接内存总量（借出 + 空闲）
+    private final AtomicLong arenaBytes = new AtomicLong();
+
+    // 统计信息
+    private final AtomicLong allocations = new AtomicLong();  // 新申请的直接缓冲区个数
+    private final AtomicLong reuses = new AtomicLong();       // 从空闲队列复用的次数
+    private final AtomicLong releases = new AtomicLong();     // 归还到池中的次数
+    private final AtomicLong unpooled = new AtomicLong();     // 超出上限或规格，退化为堆缓冲区的次数
+
+    public BufferPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public BufferPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes + " (expected: >= 0)");
+        }
+        this.maxBytes = maxBytes;
+        // 不能直接创建泛型数组，数组中只放 ConcurrentLinkedQueue<ByteBuffer>，强转是安全的
+        @SuppressWarnings("unchecked")
+        Queue<ByteBuffer>[] lists = (Queue<ByteBuffer>[]) new Queue<?>[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            lists[i] = new ConcurrentLinkedQueue<>();
+        }
+        freeLists = lists;
+    }
+
+    /**
+     * 借用一个容量不小于 size 的缓冲区，返回时已处于写模式（position = 0）
+     */
+    public ByteBuffer acquire(int size) {
+        int index = sizeClass(size);
+        if (index < 0) {
+            // 超过最大规格，不池化
+            unpooled.incrementAndGet();
+            return ByteBuffer.allocate(size);
+        }
+
+        ByteBuffer buffer = freeLists[index].poll();
+        if (buffer != null) {
+            reuses.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        int capacity = SIZE_CLASSES[index];
+        if (!reserve(capacity)) {
+            // 池已满，退化为堆缓冲区
+            unpooled.incrementAndGet();
+            return ByteBuffer.allocate(capacity);
+        }
+        allocations.incrementAndGet();
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * 归还缓冲区，非本池申请的缓冲区会被直接丢弃
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        int index = sizeClass(buffer.capacity());
+        if (index < 0 || SIZE_CLASSES[index] != buffer.capacity()) {
+            return;
+        }
+        releases.incrementAndGet();
+        freeLists[index].offer(buffer);
+    }
+
+    private boolean reserve(int capacity) {
+        for (;;) {
+            long current = arenaBytes.get();
+            long next = current + capacity;
+            if (next > maxBytes) {
+                return false;
+            }
+            if (arenaBytes.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 返回能容纳 size 的最小规格下标，超过最大规格返回 -1
+     */
+    static int sizeClass(int size) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public long arenaBytes() {
+        return arenaBytes.get();
+    }
+
+    public long allocations() {
+        return allocations.get();
+    }
+
+    public long reuses() {
+        return reuses.get();
+    }
+
+    public long releases() {
+        return releases.get();
+    }
+
+    public long unpooled() {
+        return unpooled.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool(arenaBytes: " + arenaBytes() + '/' + maxBytes
+                + ", allocations: " + allocations()
+                + ", reuses: " + reuses()
+                + ", releases: " + releases()
+                + ", unpooled: " + unpooled() + ')';
+    }
+}
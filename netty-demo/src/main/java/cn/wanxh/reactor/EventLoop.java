@@ -0,0 +1,34 @@
+package cn.wanxh.reactor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 14:10
+ * @Author: 阿左不是蜗牛
+ * @Description: Reactor 线程对处理器开放的能力
+ *  execute() 提交的任务在 Reactor 线程中执行：业务线程不直接修改 SelectionKey，
+ *  而是把发送、关闭等后续操作交回 Reactor 线程，Reactor 线程从不等待业务线程
+ */
+interface EventLoop extends Executor {
+
+    /**
+     * 该 Reactor 上所有连接共用的缓冲池
+     */
+    BufferPool bufferPool();
+
+    /**
+     * 该 Reactor 线程的运行指标，读写字节数只能在 Reactor 线程中记录
+     */
+    ReactorMetrics metrics();
+
+    /**
+     * 该 Reactor 所属服务的读缓冲区配置，每个连接从中创建自己的预测状态
+     */
+    RecvBufferAllocator recvBufferAllocator();
+
+    /**
+     * 该 Reactor 所属服务的业务线程池，服务关闭时一起关闭
+     */
+    WorkPool workPool();
+}
@@ -0,0 +1,68 @@
+package cn.wanxh.reactor;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 17:55
+ * @Author: 阿左不是蜗牛
+ * @Description: 直方图某一时刻的统计结果，通过 JMX 以 CompositeData 的形式发布
+ *  分位数取所在桶的上界，相对误差不超过 12.5%
+ */
+public class HistogramSnapshot {
+
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    public HistogramSnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count: " + count
+                + ", mean: " + String.format("%.1f", mean)
+                + ", p50: " + p50
+                + ", p90: " + p90
+                + ", p99: " + p99
+                + ", p999: " + p999
+                + ", max: " + max;
+    }
+}
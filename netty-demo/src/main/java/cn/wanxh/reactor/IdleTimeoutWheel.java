@@ -0,0 +1,198 @@
+package cn.wanxh.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 17:20
+ * @Author: 阿左不是蜗牛
+ * @Description: 空闲连接检测的时间轮，每个 Reactor 一个，只由 Reactor 线程访问
+ *  连接读写时只更新 lastReadTime/lastWriteTime，不操作时间轮，开销 O(1) 且与连接数无关；
+ *  每个连接在时间轮上只挂一个节点（侵入式双向链表，节点就是 BasicHandler 本身），
+ *  到期时才根据最后读写时间判断：已经空闲超时则关闭连接，否则挂到下一个可能超时的时刻。
+ *  Reactor 线程用 select(timeout) 等到下一个刻度，不需要为每个连接提交定时任务。
+ *
+ *  readerIdle：超过该时间没有读到数据；writerIdle：超过该时间没有写出数据；
+ *  allIdle：超过该时间既没有读也没有写；为 0 表示不检测。
+ */
+final class IdleTimeoutWheel {
+
+    static final long DEFAULT_TICK_MILLIS = 100;
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+    private final BasicHandler[] wheel;
+    private final int mask;
+
+    private final long startTime = System.nanoTime();
+
+    // 下一个待处理的刻度
+    private long currentTick;
+
+    private long readerIdleNanos;
+    private long writerIdleNanos;
+    private long allIdleNanos;
+
+    private int size;
+    private long evicted;
+
+    IdleTimeoutWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    IdleTimeoutWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis: " + tickMillis + " (expected: > 0)");
+        }
+        if (wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0) {
+            throw new IllegalArgumentException("wheelSize: " + wheelSize + " (expected: power of 2)");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new BasicHandler[wheelSize];
+        this.mask = wheelSize - 1;
+    }
+
+    /**
+     * 设置空闲超时，需要在 Reactor 线程启动前调用
+     */
+    void setIdleTimeouts(long readerIdleTime, long writerIdleTime, long allIdleTime, TimeUnit unit) {
+        this.readerIdleNanos = Math.max(0, unit.toNanos(readerIdleTime));
+        this.writerIdleNanos = Math.max(0, unit.toNanos(writerIdleTime));
+        this.allIdleNanos = Math.max(0, unit.toNanos(allIdleTime));
+    }
+
+    boolean isEnabled() {
+        return readerIdleNanos > 0 || writerIdleNanos > 0 || allIdleNanos > 0;
+    }
+
+    /**
+     * 新连接加入检测，最后读写时间从现在开始计算
+     */
+    void add(BasicHandler handler, long now) {
+        handler.lastReadTime = now;
+        handler.lastWriteTime = now;
+        if (!isEnabled()) {
+            return;
+        }
+        handler.idleWheel = this;
+        size++;
+        schedule(handler, nextDeadline(handler, now));
+    }
+
+    /**
+     * 连接关闭时移除
+     */
+    void remove(BasicHandler handler) {
+        if (handler.idleWheel != this) {
+            return;
+        }
+        unlink(handler);
+        handler.idleWheel = null;
+        size--;
+    }
+
+    /**
+     * 距离下一个刻度的毫秒数，供 select(timeout) 使用；没有连接需要检测时返回 0（一直阻塞）
+     */
+    long nextTimeoutMillis(long now) {
+        if (size == 0) {
+            return 0;
+        }
+        long nextTickTime = startTime + (currentTick + 1) * tickNanos;
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextTickTime - now + 999_999));
+    }
+
+    /**
+     * 处理所有已经走过的刻度，关闭空闲超时的连接
+     * @return 本次关闭的连接数
+     */
+    int expire(long now) {
+        if (size == 0) {
+            currentTick = tickOf(now);
+            return 0;
+        }
+        int closed = 0;
+        long lastTick = tickOf(now);
+        // 一次最多转一圈，更早的刻度与当前刻度落在同一个槽上
+        long firstTick = Math.max(currentTick, lastTick - mask);
+        for (long tick = firstTick; tick <= lastTick; tick++) {
+            BasicHandler handler = wheel[(int) (tick & mask)];
+            while (handler != null) {
+                BasicHandler next = handler.idleNext;
+                if (handler.idleDeadline <= now) {
+                    unlink(handler);
+                    long deadline = nextDeadline(handler, now);
+                    if (deadline <= now) {
+                        handler.idleWheel = null;
+                        size--;
+                        evicted++;
+                        closed++;
+                        handler.close();
+                    } else {
+                        schedule(handler, deadline);
+                    }
+                }
+                handler = next;
+            }
+        }
+        currentTick = lastTick + 1;
+        return closed;
+    }
+
+    /**
+     * 根据最后读写时间计算最近一次可能超时的时刻，已经超时返回值不大于 now
+     */
+    private long nextDeadline(BasicHandler handler, long now) {
+        long deadline = Long.MAX_VALUE;
+        if (readerIdleNanos > 0) {
+            deadline = Math.min(deadline, handler.lastReadTime + readerIdleNanos);
+        }
+        if (writerIdleNanos > 0) {
+            deadline = Math.min(deadline, handler.lastWriteTime + writerIdleNanos);
+        }
+        if (allIdleNanos > 0) {
+            deadline = Math.min(deadline, Math.max(handler.lastReadTime, handler.lastWriteTime) + allIdleNanos);
+        }
+        return deadline;
+    }
+
+    private long tickOf(long time) {
+        return Math.max(0, (time - startTime) / tickNanos);
+    }
+
+    private void schedule(BasicHandler handler, long deadline) {
+        handler.idleDeadline = deadline;
+        // 不早于下一个待处理的刻度，超过一圈的连接在槽里等待，转到时再比较 deadline
+        long tick = Math.max(currentTick, (deadline - startTime + tickNanos - 1) / tickNanos);
+        int slot = (int) (tick & mask);
+        BasicHandler head = wheel[slot];
+        handler.idleSlot = slot;
+        handler.idlePrev = null;
+        handler.idleNext = head;
+        if (head != null) {
+            head.idlePrev = handler;
+        }
+        wheel[slot] = handler;
+    }
+
+    private void unlink(BasicHandler handler) {
+        if (handler.idlePrev != null) {
+            handler.idlePrev.idleNext = handler.idleNext;
+        } else if (wheel[handler.idleSlot] == handler) {
+            wheel[handler.idleSlot] = handler.idleNext;
+        }
+        if (handler.idleNext != null) {
+            handler.idleNext.idlePrev = handler.idlePrev;
+        }
+        handler.idlePrev = null;
+        handler.idleNext = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long evicted() {
+        return evicted;
+    }
+}
@@ -2,15 +2,22 @@ package cn.wanxh.reactor;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.Executor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @program: netty-wanxh
@@ -19,24 +26,52 @@ import java.util.concurrent.Executors;
  * @Description: 多Reactor主从模型，为了匹配CPU 和 IO的速率，可设计多个Reactor
  *  主Reactor 负责监听连接，然后将连接注册到从Reactor，将I/O转移至从Reactor
  *  从Reactor 负责通道IO的读写，处理器可选择单线程或线程池
+ *
+ *  SO_REUSEPORT 模式（Linux，JDK 9+）：每个从Reactor 各自以 SO_REUSEPORT 绑定同一端口并直接接收连接，
+ *  由内核把新连接分散到各个监听 socket 上，不再经过主Reactor 和跨线程的任务队列；不支持时退化为单 Acceptor。
+ *
+ *  shutdownGracefully() 停止接收新连接，各从Reactor 排空连接，期限到达时强制关闭剩余连接，
+ *  然后关闭 Selector、selectPool 和业务线程池
  */
 public class MultiReactor {
 
-    private static final int POOL_SIZE = 3;
+    // 从Reactor的默认数量，与CPU核数保持一致
+    private static final int DEFAULT_SUB_REACTORS = Runtime.getRuntime().availableProcessors();
 
-    private int port;
+    // StandardSocketOptions.SO_REUSEPORT（JDK 9+），编译目标仍然是 Java 8，通过反射获取；不支持时为 null
+    static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
 
+    private final int port;
+
+    // 轮询起点，连接数和耗时都相同时依次分配，避免总是落在第一个从Reactor上
     int next = 0;
 
     // Reactor(Selector) 线程池，其中一个线程被 mainReactor 使用，剩余线程都被subReactor 使用
-    static Executor selectPool = Executors.newFixedThreadPool(POOL_SIZE);
+    private final ExecutorService selectPool;
+
+    // 业务线程池，所有从Reactor 上的 MultiThreadHandler 共用
+    private final WorkPool workPool;
 
     // 主 Reactor，接收连接，把SocketChannel 注册到从 Reactor上
-    private Reactor mainReactor;
+    private final Reactor mainReactor;
 
 
     // 从 Reactor的线程，用于处理I/O读写，线程池用于处理业务逻辑
-    private Reactor[] subReactors = new Reactor[POOL_SIZE -1];
+    private final Reactor[] subReactors;
+
+    // 是否尝试 SO_REUSEPORT 模式，需要在 start() 之前设置
+    private boolean reusePort;
+
+    // start() 之后实际是否工作在 SO_REUSEPORT 模式
+    private volatile boolean reusePortActive;
+
+    // 接收连接的批量上限、最大连接数、速率限制和计数，所有 Acceptor 共享
+    final AcceptControl acceptControl = new AcceptControl();
+
+    // 已经绑定端口的 Acceptor，关闭时首先停止它们
+    private final List<Acceptor> acceptors = new ArrayList<>();
+
+    private ShutdownReport shutdownReport;
 
     /**
      * 补充：
@@ -44,19 +79,44 @@ public class MultiReactor {
      *     业务处理如协议的编解码都分配给线程池处理。可能会有这样的情况发生，业务处理很快，
      *     Reactor线程大部分的都在处理IO，导致了CPU闲置，降低了响应速度。
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         MultiReactor mr = new MultiReactor(10088);
+        mr.setReusePort(true); // 支持时每个从Reactor 各自监听端口，否则由主Reactor 统一接收连接
+        mr.setIdleTimeouts(0, 0, 300, TimeUnit.SECONDS); // 5 分钟没有读写的连接被关闭
+        // 收到 SIGTERM 时优雅关闭，最多等待 30 秒
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try{
+                System.out.println(mr.shutdownGracefully(30, TimeUnit.SECONDS));
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }, "MultiReactor-shutdown"));
+        mr.start();
+    }
 
+    public MultiReactor(int port) throws IOException {
+        this(port, DEFAULT_SUB_REACTORS);
     }
 
-    public MultiReactor(int port) {
-        try{
-            this.port = port;
-            mainReactor = new Reactor();
-        }catch(Exception e){
+    public MultiReactor(int port, int subReactorCount) throws IOException {
+        this(port, subReactorCount, WorkPool.fromSystemProperties());
+    }
 
+    /**
+     * @param workPool 业务线程池，服务关闭时一起关闭
+     */
+    public MultiReactor(int port, int subReactorCount, WorkPool workPool) throws IOException {
+        if (subReactorCount <= 0) {
+            throw new IllegalArgumentException("subReactorCount: " + subReactorCount + " (expected: > 0)");
+        }
+        this.port = port;
+        this.workPool = workPool;
+        this.selectPool = Executors.newFixedThreadPool(subReactorCount + 1);
+        this.mainReactor = new Reactor("mainReactor", acceptControl, workPool);
+        this.subReactors = new Reactor[subReactorCount];
+        for (int i = 0; i < subReactorCount; i++) {
+            subReactors[i] = new Reactor("subReactor-" + i, acceptControl, workPool);
         }
-
     }
 
 
@@ -65,97 +125,489 @@ public class MultiReactor {
      * @throws IOException
      */
     public void start() throws IOException {
-        Thread mainReactorThread = new Thread(mainReactor);
-        mainReactorThread.setName("mainReactor");
-        // 将ServerSocketChannel 注册到 mainReactor
+        if (reusePort && isReusePortSupported()) {
+            startReusePort();
+            return;
+        }
+        if (reusePort) {
+            System.out.println("SO_REUSEPORT is not supported, falling back to a single acceptor");
+        }
+
+        // 先启动从Reactor，保证 Acceptor 分发连接时从Reactor 已经在运行
+        for (Reactor subReactor : subReactors) {
+            launch(subReactor);
+        }
+
+        // 将ServerSocketChannel 注册到 mainReactor，必须在 mainReactor 阻塞在 select() 之前完成
+        acceptors.add(new Acceptor(mainReactor, port, false));
+
+        // 端口绑定成功后发布各 Reactor 线程的运行指标
+        acceptControl.register(port);
+        mainReactor.metrics.register(port);
+        for (Reactor subReactor : subReactors) {
+            subReactor.metrics.register(port);
+        }
+
+        launch(mainReactor); // 执行主Reactor线程
+    }
+
+    private void launch(Reactor reactor) {
+        reactor.started = true;
+        selectPool.execute(reactor);
+    }
+
+    /**
+     * 每个从Reactor 以 SO_REUSEPORT 绑定同一端口，在自己的线程中接收并注册连接；主Reactor 不启动
+     */
+    private void startReusePort() throws IOException {
+        // 全部绑定成功后再启动，任何一个失败都不对外提供服务
+        Acceptor[] acceptors = new Acceptor[subReactors.length];
+        try{
+            for (int i = 0; i < subReactors.length; i++) {
+                acceptors[i] = new Acceptor(subReactors[i], port, true);
+            }
+        }catch(IOException e){
+            for (Acceptor acceptor : acceptors) {
+                if (acceptor != null) {
+                    acceptor.serverSocketChannel.close();
+                }
+            }
+            throw e;
+        }
+
+        reusePortActive = true;
+        for (Acceptor acceptor : acceptors) {
+            this.acceptors.add(acceptor);
+        }
+        acceptControl.register(port);
+        for (Reactor subReactor : subReactors) {
+            subReactor.metrics.register(port);
+            launch(subReactor);
+        }
+    }
+
+    /**
+     * 优雅关闭：
+     *  1. 在各 Acceptor 所属的 Reactor 线程中关闭监听 socket，停止接收新连接；
+     *     主Reactor 已经分发出去的连接在从Reactor 的任务队列中，排在排空任务之前完成注册；
+     *  2. 各从Reactor 通知连接排空：不再读取新的请求，已读取的请求处理完、响应写完后关闭；
+     *  3. 期限到达时从Reactor 强制关闭剩余连接，所有连接关闭后 Reactor 线程关闭 Selector 并退出；
+     *  4. 关闭 selectPool 和业务线程池，注销 JMX。
+     * 重复调用返回第一次的结果
+     * @param timeout 排空连接的期限
+     * @return 排空和被强制关闭的连接数
+     */
+    public synchronized ShutdownReport shutdownGracefully(long timeout, TimeUnit unit) throws InterruptedException {
+        if (shutdownReport != null) {
+            return shutdownReport;
+        }
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+
+        CountDownLatch acceptorsClosed = new CountDownLatch(acceptors.size());
+        for (Acceptor acceptor : acceptors) {
+            acceptor.reactor.execute(() -> {
+                acceptor.close();
+                acceptorsClosed.countDown();
+            });
+        }
+        acceptorsClosed.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+        Reactor[] reactors = new Reactor[subReactors.length + 1];
+        reactors[0] = mainReactor;
+        System.arraycopy(subReactors, 0, reactors, 1, subReactors.length);
+        for (Reactor reactor : reactors) {
+            if (reactor.started) {
+                reactor.drain(deadline);
+            } else {
+                reactor.closeSelector();
+            }
+        }
+
+        // 期限到达时从Reactor 会强制关闭剩余连接，多等一会儿；仍未退出说明处理器阻塞了 Reactor 线程
+        boolean terminated = true;
+        int drained = 0;
+        int forced = 0;
+        for (Reactor reactor : reactors) {
+            if (!reactor.started) {
+                continue;
+            }
+            long wait = Math.max(0, deadline - System.nanoTime()) + TimeUnit.SECONDS.toNanos(1);
+            terminated &= reactor.terminated.await(wait, TimeUnit.NANOSECONDS);
+            drained += reactor.drainingConnections - reactor.forcedConnections;
+            forced += reactor.forcedConnections;
+        }
+        if (terminated) {
+            selectPool.shutdown();
+        } else {
+            selectPool.shutdownNow(); // 中断阻塞的 Reactor 线程
+        }
+        selectPool.awaitTermination(1, TimeUnit.SECONDS);
 
-        selectPool.execute(mainReactorThread); // 执行主Reactor线程
+        workPool.shutdown();
+        if (!workPool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            workPool.shutdownNow();
+        }
 
+        acceptControl.unregister();
+        for (Reactor reactor : reactors) {
+            reactor.metrics.unregister();
+        }
+        shutdownReport = new ShutdownReport(drained, forced, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return shutdownReport;
+    }
 
+    /**
+     * 设置是否使用 SO_REUSEPORT 模式，需要在 start() 之前调用；不支持时 start() 退化为单 Acceptor
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * start() 之后实际是否工作在 SO_REUSEPORT 模式
+     */
+    public boolean isReusePortActive() {
+        return reusePortActive;
+    }
+
+    /**
+     * 当前平台是否支持 SO_REUSEPORT 模式：JDK 9+ 提供该选项，且为 Linux（内核按连接负载均衡到各监听 socket）
+     */
+    public static boolean isReusePortSupported() {
+        if (SO_REUSEPORT == null || !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("linux")) {
+            return false;
+        }
+        try(ServerSocketChannel channel = ServerSocketChannel.open()){
+            return channel.supportedOptions().contains(SO_REUSEPORT);
+        }catch(IOException e){
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try{
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        }catch(Throwable t){
+            // JDK 8 没有该选项
+            return null;
+        }
+    }
+
+    /**
+     * 设置空闲超时，超时的连接会被关闭，为 0 表示不检测；需要在 start() 之前调用
+     * @param readerIdleTime 没有读到数据的时间
+     * @param writerIdleTime 没有写出数据的时间
+     * @param allIdleTime 既没有读也没有写的时间
+     */
+    public void setIdleTimeouts(long readerIdleTime, long writerIdleTime, long allIdleTime, TimeUnit unit) {
+        for (Reactor subReactor : subReactors) {
+            subReactor.idleWheel.setIdleTimeouts(readerIdleTime, writerIdleTime, allIdleTime, unit);
+        }
     }
 
     /**
-     * 初始化并配置 ServerSocketChannel， 注册到mainReactor 的 Selector上
+     * 设置一次 OP_ACCEPT 就绪最多接收的连接数，剩余的连接留在 backlog 中等下一轮
+     */
+    public void setMaxAcceptsPerWakeup(int maxAcceptsPerWakeup) {
+        acceptControl.setMaxAcceptsPerWakeup(maxAcceptsPerWakeup);
+    }
+
+    /**
+     * 设置最大连接数（所有从Reactor 合计），超过后新连接被立即关闭；0 表示不限制
+     */
+    public void setMaxConnections(int maxConnections) {
+        acceptControl.setMaxConnections(maxConnections);
+    }
+
+    /**
+     * 设置接收连接的速率限制（令牌桶，所有 Acceptor 共享），acceptsPerSecond 为 0 表示不限速
+     * @param acceptsPerSecond 每秒接收的连接数
+     * @param burst 允许的突发连接数
+     */
+    public void setAcceptRateLimit(int acceptsPerSecond, int burst) {
+        acceptControl.setAcceptRateLimit(acceptsPerSecond, burst);
+    }
+
+    /**
+     * 设置监听 socket 的 backlog，需要在 start() 之前调用
+     */
+    public void setBacklog(int backlog) {
+        acceptControl.setBacklog(backlog);
+    }
+
+    /**
+     * 设置读缓冲区的自适应范围（取 BufferPool 的规格 1K/4K/16K/64K），需要在 start() 之前调用
+     * @param minimum 最小值
+     * @param initial 新连接的初始值
+     * @param maximum 最大值，不超过 64K
+     */
+    public void setRecvBufferSizes(int minimum, int initial, int maximum) {
+        for (Reactor subReactor : subReactors) {
+            subReactor.recvBufferAllocator = new RecvBufferAllocator(minimum, initial, maximum,
+                    subReactor.recvBufferAllocator.maxReadsPerEvent());
+        }
+    }
+
+    /**
+     * 设置一次读事件中一个连接最多读取的次数，用完后让出从Reactor 线程；需要在 start() 之前调用
+     */
+    public void setMaxReadsPerEvent(int maxReadsPerEvent) {
+        for (Reactor subReactor : subReactors) {
+            subReactor.recvBufferAllocator = subReactor.recvBufferAllocator.withMaxReadsPerEvent(maxReadsPerEvent);
+        }
+    }
+
+    /**
+     * 每个从Reactor 当前的活跃连接数，下标与从Reactor 编号一致
+     */
+    public int[] connectionCounts() {
+        int[] counts = new int[subReactors.length];
+        for (int i = 0; i < subReactors.length; i++) {
+            counts[i] = subReactors[i].connectionCount();
+        }
+        return counts;
+    }
+
+    /**
+     * 选出负载最低的从Reactor：活跃连接数最少优先，连接数相同时选最近一轮事件处理耗时最短的
+     */
+    Reactor nextSubReactor() {
+        int start = next;
+        if (++next == subReactors.length) {
+            next = 0;
+        }
+
+        Reactor best = subReactors[start];
+        int bestCount = best.connectionCount();
+        for (int i = 1; i < subReactors.length; i++) {
+            Reactor candidate = subReactors[(start + i) % subReactors.length];
+            int count = candidate.connectionCount();
+            if (count < bestCount || (count == bestCount && candidate.lastLoopNanos < best.lastLoopNanos)) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 初始化并配置 ServerSocketChannel， 注册到 Reactor 的 Selector上
+     *  单 Acceptor 模式下注册在 mainReactor 上，接收的连接分发给负载最低的从Reactor；
+     *  SO_REUSEPORT 模式下每个从Reactor 一个，接收的连接直接注册在本 Reactor 上
      */
     class Acceptor implements  Runnable {
+        final Reactor reactor;
+
         final Selector sel;
 
         final ServerSocketChannel serverSocketChannel;
 
-        public Acceptor(Selector selector,int port) throws IOException {
-            this.sel = selector;
+        // 是否与其他 Acceptor 共享端口（SO_REUSEPORT），共享时连接留在本 Reactor
+        final boolean reusePort;
+
+        public Acceptor(Reactor reactor, int port, boolean reusePort) throws IOException {
+            this.reactor = reactor;
+            this.sel = reactor.getSelector();
+            this.reusePort = reusePort;
             serverSocketChannel = ServerSocketChannel.open();
-            serverSocketChannel.socket().bind(new InetSocketAddress(port));
-            // 设置成非阻塞模式
-            serverSocketChannel.configureBlocking(false);
-            // 注册到选择器并设置处理socket连接事件
-            SelectionKey sk = serverSocketChannel.register(sel, SelectionKey.OP_ACCEPT);
-            sk.attach(this);
-            System.out.println("mainReactor-" + "Acceptor: Listening on port: " + port);
+            try{
+                if (reusePort) {
+                    // 必须在 bind 之前设置，同一端口上的所有 socket 都要设置
+                    serverSocketChannel.setOption(SO_REUSEPORT, true);
+                }
+                serverSocketChannel.socket().bind(new InetSocketAddress(port), acceptControl.getBacklog());
+                // 设置成非阻塞模式
+                serverSocketChannel.configureBlocking(false);
+                // 注册到选择器并设置处理socket连接事件
+                SelectionKey sk = serverSocketChannel.register(sel, SelectionKey.OP_ACCEPT);
+                sk.attach(this);
+            }catch(IOException e){
+                serverSocketChannel.close();
+                throw e;
+            }
+            System.out.println(reactor.name + "-" + "Acceptor: Listening on port: " + port + (reusePort ? " (SO_REUSEPORT)" : ""));
         }
 
-        @Override
-        public synchronized void run() {
+        /**
+         * 停止接收新连接，在所属 Reactor 的线程中调用
+         */
+        void close() {
             try{
-                // 接收连接，非阻塞模式下，没有连接直接返回 null
-                SocketChannel sc = serverSocketChannel.accept();
-                if (sc != null) {
-                    System.out.println("mainReactor-" + "Acceptor: " + sc.socket().getLocalSocketAddress() +" 注册到 subReactor-" + next);
-                    // 将接收的连接注册到从 Reactor 上
-                    // 发现无法直接注册，一直获取不到锁，这是由于 从 Reactor 目前正阻塞在 select() 方法上，此方法已经
-                    // 锁定了 publicKeys（已注册的key)，直接注册会造成死锁
-
-                    // 如何解决呢，直接调用 wakeup，有可能还没有注册成功又阻塞了。这是一个多线程同步的问题，可以借助队列进行处理
-                    Reactor subReactor = subReactors[next];
-                    subReactor.register(new MultiThreadHandler(sc));
-                    if (++next == subReactors.length) {
-                        next = 0;
-                    }
-                }
-            }catch(Exception ex){
-                ex.printStackTrace();
+                serverSocketChannel.close();
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * 只在所属 Reactor 的线程中执行，一次批量接收多个连接，准入控制见 AcceptControl
+         */
+        @Override
+        public void run() {
+            long pauseMillis = acceptControl.accept(serverSocketChannel, this::register);
+            if (pauseMillis > 0) {
+                // 限速或 accept() 出错：暂停关注 OP_ACCEPT，新连接留在 backlog 中，到期后恢复
+                setAcceptInterest(0);
+                reactor.schedule(() -> setAcceptInterest(SelectionKey.OP_ACCEPT), pauseMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void setAcceptInterest(int ops) {
+            // Selector 可能已经重建，每次从通道重新获取 key
+            SelectionKey key = serverSocketChannel.keyFor(reactor.getSelector());
+            if (key != null && key.isValid()) {
+                key.interestOps(ops);
             }
+        }
 
+        private void register(SocketChannel sc) {
+            // 将接收的连接注册到从 Reactor 上
+            // 发现无法直接注册，一直获取不到锁，这是由于 从 Reactor 目前正阻塞在 select() 方法上，此方法已经
+            // 锁定了 publicKeys（已注册的key)，直接注册会造成死锁
+
+            // 如何解决呢，直接调用 wakeup，有可能还没有注册成功又阻塞了。这是一个多线程同步的问题，可以借助队列进行处理
+            Reactor subReactor = reusePort ? reactor : nextSubReactor();
+            subReactor.register(new MultiThreadHandler(sc, subReactor));
         }
     }
 
-    static class Reactor implements Runnable {
+    static class Reactor implements Runnable, EventLoop {
+
+        // 其他线程提交到 Reactor 线程执行的任务：注册新连接、业务线程处理完后的发送等
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        // 空闲连接检测的时间轮，由 select(timeout) 驱动
+        final IdleTimeoutWheel idleWheel = new IdleTimeoutWheel();
+
+        // 选择器（数组实现的就绪 key 集合，空轮询时自动重建）
+        final ReactorSelector selector;
+
+        final String name;
+
+        // 该 Reactor 上所有连接共用的缓冲池
+        final BufferPool bufferPool = new BufferPool();
+
+        // 当前注册在该 Reactor 上的活跃连接数（包含还在任务队列中等待注册的连接）
+        private final AtomicInteger connections = new AtomicInteger();
+
+        // 最近一轮分发就绪事件的耗时（不含阻塞在 select() 上的时间）
+        volatile long lastLoopNanos;
+
+        // 运行指标，通过 JMX 发布
+        final ReactorMetrics metrics;
+
+        // 读缓冲区的自适应大小和每次读事件的读取预算
+        RecvBufferAllocator recvBufferAllocator = new RecvBufferAllocator();
+
+        // 运行该 Reactor 的线程，在该线程中注册连接时不经过任务队列
+        private volatile Thread thread;
+
+        // 连接关闭时的回调：本 Reactor 和整个服务的活跃连接数各减一
+        private final Runnable connectionClosed;
 
-        private ConcurrentLinkedDeque<MultiThreadHandler> events = new ConcurrentLinkedDeque<>();
+        // Reactor 线程的定时任务（如限速后恢复接收连接）
+        private final ScheduledTaskQueue scheduledTasks = new ScheduledTaskQueue();
 
-        final Selector selector;
+        // 业务线程池，所属服务的所有从Reactor 共用
+        private final WorkPool workPool;
 
-        public Reactor() throws IOException {
-            selector = Selector.open();
+        // 是否已经提交到 selectPool 运行
+        volatile boolean started;
+
+        // 是否正在排空（优雅关闭中），只由 Reactor 线程访问
+        private boolean draining;
+
+        // 开始排空时的连接数、期限到达时被强制关闭的连接数，run() 退出后由关闭线程读取
+        int drainingConnections;
+        int forcedConnections;
+
+        // run() 退出时计数
+        final CountDownLatch terminated = new CountDownLatch(1);
+
+        public Reactor(String name, AcceptControl acceptControl, WorkPool workPool) throws IOException {
+            this.name = name;
+            this.workPool = workPool;
+            this.connectionClosed = () -> {
+                connections.decrementAndGet();
+                acceptControl.connectionClosed();
+            };
+            selector = new ReactorSelector();
+            metrics = new ReactorMetrics(name, this, workPool);
         }
 
         public Selector getSelector(){
-            return selector;
+            return selector.unwrap();
+        }
+
+        public int connectionCount() {
+            return connections.get();
         }
 
 
         @Override
         public void run() {
+            thread = Thread.currentThread();
+            thread.setName(name);
             try{
                 while (!Thread.interrupted()) {  // 死循环
-                    MultiThreadHandler handler = null;
-                    while ((handler = events.poll()) != null){
-                        handler.socketChannel.configureBlocking(false);  // 设置非阻塞
-                        handler.selectionKey = handler.socketChannel.register(selector, SelectionKey.OP_READ); // 注册通道
-                        handler.selectionKey.attach(handler);
+                    long taskStart = System.nanoTime();
+                    runAllTasks();
+                    scheduledTasks.runDue(taskStart);
+                    // 排空完毕（连接可能在任务、定时任务或上一轮分发中关闭），不再进入 select()
+                    if (draining && connections.get() == 0) {
+                        break;
                     }
-
-                    selector.select(); // 阻塞，直到有通道事件就绪
-                    Set<SelectionKey> selected = selector.selectedKeys(); // 拿到就绪通道 SelectionKey 的集合
-                    Iterator<SelectionKey> it = selected.iterator();
-                    while (it.hasNext()) {
-                        SelectionKey skTmp = it.next();
+                    long selectStart = System.nanoTime();
+
+                    // 阻塞，直到有通道事件就绪、有任务提交，或到达时间轮的下一个刻度、定时任务到期
+                    selector.select(tasks, scheduledTasks.nextTimeoutMillis(selectStart, idleWheel.nextTimeoutMillis(selectStart)));
+                    long loopStart = System.nanoTime();
+                    SelectedSelectionKeySet selected = selector.selectedKeys(); // 拿到就绪通道 SelectionKey 的集合
+                    int keys = selected.size;
+                    for (int i = 0; i < keys; i++) {
+                        SelectionKey skTmp = selected.keys[i];
+                        selected.keys[i] = null;
                         dispatch(skTmp); // 根据 key 的事件类型进行分发
                     }
-                    selected.clear(); // 清空就绪通道的 key
+                    selected.reset(); // 清空就绪通道的 key
+                    long loopEnd = System.nanoTime();
+                    metrics.recordLoop(selectStart - taskStart, loopStart - selectStart, loopEnd - loopStart, keys);
+
+                    // 关闭空闲超时的连接
+                    idleWheel.expire(loopEnd);
+                    lastLoopNanos = loopEnd - loopStart;
                 }
             }catch(Exception e){
                 e.printStackTrace();
+            }finally {
+                closeSelector();
+                terminated.countDown();
+            }
+        }
+
+        /**
+         * 开始排空：通知所有连接处理完已读取的请求后关闭，deadline 到达时强制关闭剩余连接
+         */
+        void drain(long deadline) {
+            execute(() -> {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+                drainingConnections = connections.get();
+                selector.drainHandlers();
+                scheduledTasks.schedule(() -> forcedConnections += selector.closeHandlers(),
+                        deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            });
+        }
+
+        void closeSelector() {
+            try{
+                selector.close();
+            }catch(IOException e){
+                e.printStackTrace();
             }
         }
 
@@ -165,16 +617,79 @@ public class MultiReactor {
          */
         void dispatch(SelectionKey key) {
             Runnable r = (Runnable) (key.attachment()); // 拿到通道注册时附加的对象
-            if (r != null) r.run();
+            if (r != null && key.isValid()) r.run();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.offer(task);
+            selector.wakeup();
+        }
+
+        /**
+         * 提交定时任务，只能在 Reactor 线程中调用
+         */
+        void schedule(Runnable task, long delay, TimeUnit unit) {
+            scheduledTasks.schedule(task, delay, unit);
+        }
+
+        @Override
+        public BufferPool bufferPool() {
+            return bufferPool;
+        }
+
+        @Override
+        public ReactorMetrics metrics() {
+            return metrics;
+        }
+
+        @Override
+        public RecvBufferAllocator recvBufferAllocator() {
+            return recvBufferAllocator;
+        }
+
+        @Override
+        public WorkPool workPool() {
+            return workPool;
+        }
+
+        private void runAllTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try{
+                    task.run();
+                }catch(Exception e){
+                    metrics.handlerException();
+                    e.printStackTrace();
+                }
+            }
         }
 
         /**
-         * 将连接通道注册到从Reactor上
+         * 将连接通道注册到从Reactor上，注册动作在从Reactor 线程中执行：
+         * 由其他线程（主Reactor）调用时作为任务提交，在本 Reactor 线程中（SO_REUSEPORT 模式）调用时直接注册
          * @param handler
          */
         void register(MultiThreadHandler handler){
-            events.offer(handler);
-            selector.wakeup();
+            connections.incrementAndGet();
+            handler.closeListener = connectionClosed;
+            if (Thread.currentThread() == thread) {
+                doRegister(handler);
+            } else {
+                execute(() -> doRegister(handler));
+            }
+        }
+
+        private void doRegister(MultiThreadHandler handler) {
+            try{
+                handler.socketChannel.configureBlocking(false);  // 设置非阻塞
+                handler.selectionKey = handler.socketChannel.register(selector.unwrap(), SelectionKey.OP_READ); // 注册通道
+                handler.selectionKey.attach(handler);
+                idleWheel.add(handler, System.nanoTime());
+            }catch(IOException e){
+                // 连接在注册前已经失效，关闭并归还计数
+                handler.close();
+            }
         }
     }
 
@@ -1,51 +1,95 @@
 package cn.wanxh.reactor;
 
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * @program: netty-wanxh
  * @Date: 2022/7/7 22:35
  * @Author: 阿左不是蜗牛
  * @Description: 多线程基本处理器：I/O读写由 Reactor 线程处理，业务的处理交给线程池
+ *  连接状态通过 CAS 流转：READING -> PROCESSING -> SENDING -> READING，不使用锁，
+ *  Reactor 线程在业务处理期间照常读取，新的请求进入 pendingRequests 排队；
+ *  同一时刻一个连接最多只有一个业务线程在处理，请求按到达顺序处理，响应按顺序发送
  */
 public class MultiThreadHandler extends  BasicHandler{
 
-    static Executor workPool = Executors.newFixedThreadPool(5);
 
     static final int PROCESSING = 4;
 
-    private Object lock = new Object();
+    // 排队等待处理的请求数上限，超过后暂停读取
+    static final int MAX_PENDING_REQUESTS = 1024;
 
-    public MultiThreadHandler(Selector selector, SocketChannel socketChannel) throws IOException {
-        super(socketChannel, selector);
+    private static final AtomicIntegerFieldUpdater<BasicHandler> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(BasicHandler.class, "state");
+
+    // Reactor 线程解析出的请求，业务线程按顺序取出处理
+    private final Queue<String> pendingRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final Runnable processor = new Processer();
+    private final Runnable afterProcessing = this::afterProcessing;
+
+    // 所属服务的所有连接共用的业务线程池，支持时使用虚拟线程，见 WorkPool
+    private final WorkPool workPool;
+
+    public MultiThreadHandler(Selector selector, SocketChannel socketChannel, EventLoop eventLoop) throws IOException {
+        super(socketChannel, selector, eventLoop);
+        this.workPool = eventLoop.workPool();
     }
 
-    public MultiThreadHandler(SocketChannel socketChannel) {
-        super(socketChannel);
+    public MultiThreadHandler(SocketChannel socketChannel, EventLoop eventLoop) {
+        super(socketChannel, eventLoop);
+        this.workPool = eventLoop.workPool();
     }
 
+    /**
+     * 读到的请求进入排队，读事件结束后 read() 写出已经处理完的响应，并根据排队情况更新关注的事件
+     */
     @Override
-    protected void read() throws IOException {
-        synchronized (lock){
-            input.clear();
-            int n = socketChannel.read(input);
-            // 是否读取完毕
-            if (inputIsComplete(n)) {
-                // 读取完毕后将后续的处理交给线程池
-                state = PROCESSING;
-                // 使用线程池异步执行
-                workPool.execute(new Processer());
+    protected void requestsReceived() {
+        for (String request : requests) {
+            pendingRequests.offer(request);
+        }
+        pendingCount.addAndGet(requests.size());
+        requests.clear();
 
+        // 将后续的处理交给线程池；已经有业务线程在处理时，由它继续处理新排队的请求
+        handOff();
+    }
 
+    /**
+     * 连接空闲（READING）且有排队请求时，抢到 PROCESSING 状态并提交给线程池
+     */
+    private void handOff() {
+        if (!pendingRequests.isEmpty() && STATE.compareAndSet(this, READING, PROCESSING)) {
+            // 使用线程池异步执行
+            metrics.workPoolHandOff(workPool.pending());
+            try{
+                workPool.execute(processor);
+            }catch(RejectedExecutionException e){
+                // 业务线程池已满，快速失败：关闭该连接，不在 Reactor 线程上排队等待
+                close();
             }
         }
     }
 
+    @Override
+    protected boolean readable() {
+        return state != CLOSED && !closeRequested && outbound.isWritable() && pendingCount.get() < MAX_PENDING_REQUESTS;
+    }
+
+    @Override
+    protected boolean requestsDone() {
+        return state == READING && pendingRequests.isEmpty();
+    }
+
     class Processer implements Runnable{
         @Override
         public void run() {
@@ -54,28 +98,44 @@ public class MultiThreadHandler extends  BasicHandler{
     }
 
     protected void processAndHandOff() {
-        synchronized (lock) {
-            try{
-                process();
-            }catch(Exception e){
-                // 关闭连接
-                try{
-                    selectionKey.channel().close();
-                }catch(IOException ex){
-                }
-                return;
+        try{
+            String request;
+            while ((request = pendingRequests.poll()) != null) {
+                pendingCount.decrementAndGet();
+                respond(request);
             }
+        }catch(Exception e){
+            metrics.handlerException();
+            // 关闭连接，同样交给 Reactor 线程
+            eventLoop.execute(this::close);
+            return;
+        }
 
-            // 最后的发送还是交给Reactor线程处理
-            state = SENDING;
-            // process完，注册事件为Write
-            selectionKey.interestOps(SelectionKey.OP_WRITE);
-
-            // 这里需要唤醒 Selector，因为当把处理交给 workPool 时，Reactor 线程已经阻塞在 select() 方法了， 注意
-            // 此时该通道感兴趣的事件还是 OP_READ，这里将通道感兴趣的事件改为 OP_WRITE，如果不唤醒的话，就只能在
-            // 下次select 返回时才能有响应了，当然了也可以在 select 方法上设置超时
-            selectionKey.selector().wakeup();
+        // 最后的发送还是交给Reactor线程处理，连接已关闭时 CAS 失败，不再处理
+        if (STATE.compareAndSet(this, PROCESSING, SENDING)) {
+            // 这里不直接修改 interestOps：Reactor 线程可能正阻塞在 select() 上，由 execute() 唤醒它，
+            // 在 Reactor 线程中写出响应并更新关注的事件
+            eventLoop.execute(afterProcessing);
+        }
+    }
 
+    /**
+     * 业务线程处理完一批请求后，在 Reactor 线程中执行
+     */
+    private void afterProcessing() {
+        if (!STATE.compareAndSet(this, SENDING, READING)) {
+            return;
+        }
+        // 处理期间又到达的请求
+        handOff();
+        if (state == CLOSED) {
+            return;
+        }
+        try{
+            send();
+        }catch(IOException e){
+            metrics.handlerException();
+            close();
         }
     }
 }
@@ -0,0 +1,144 @@
+package cn.wanxh.reactor;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 14:40
+ * @Author: 阿左不是蜗牛
+ * @Description: MultiThreadHandler 压测：多个线程在同一个连接上流水线发送请求，
+ *  校验每个连接收到的响应与请求写出的顺序完全一致（没有丢失、没有乱序）
+ */
+public class MultiThreadHandlerStressTest {
+
+    private static final String PROMPT = new String(BasicHandler.PROMPT, StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        int port = 10089;
+        int connections = 4;           // 连接数
+        int writersPerConnection = 8;  // 每个连接上并发写的线程数
+        int requestsPerWriter = 5000;  // 每个线程发送的请求数
+        int batch = 16;                // 每次连续写出的请求数（流水线深度）
+
+        MultiReactor server = new MultiReactor(port);
+        server.setReusePort(Boolean.getBoolean("reactor.reusePort")); // -Dreactor.reusePort=true 压测 SO_REUSEPORT 模式
+        server.start();
+        Thread.sleep(500);
+
+        CountDownLatch done = new CountDownLatch(connections);
+        List<Connection> all = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            Connection connection = new Connection(c, new Socket("127.0.0.1", port), writersPerConnection * requestsPerWriter, done);
+            all.add(connection);
+            connection.start(writersPerConnection, requestsPerWriter, batch);
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        int failures = 0;
+        for (Connection connection : all) {
+            if (connection.error != null) {
+                failures++;
+                System.out.println("connection-" + connection.id + " FAILED: " + connection.error);
+            } else {
+                System.out.println("connection-" + connection.id + " OK, " + connection.received + " replies in order");
+            }
+        }
+        long total = (long) connections * writersPerConnection * requestsPerWriter;
+        System.out.println(total + " requests in " + elapsed / 1_000_000 + " ms, " + (total * 1_000_000_000L / elapsed) + " req/s");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    static class Connection {
+        final int id;
+        final Socket socket;
+        final int expected;
+        final CountDownLatch done;
+
+        // 按实际写入 socket 的顺序记录请求，与 out 使用同一把锁
+        final List<String> sent = new ArrayList<>();
+
+        volatile int received;
+        volatile String error;
+
+        Connection(int id, Socket socket, int expected, CountDownLatch done) {
+            this.id = id;
+            this.socket = socket;
+            this.expected = expected;
+            this.done = done;
+        }
+
+        void start(int writers, int requestsPerWriter, int batch) throws Exception {
+            OutputStream out = socket.getOutputStream();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                Thread t = new Thread(() -> {
+                    try{
+                        for (int i = 0; i < requestsPerWriter; i += batch) {
+                            StringBuilder lines = new StringBuilder();
+                            List<String> requests = new ArrayList<>();
+                            for (int j = i; j < Math.min(i + batch, requestsPerWriter); j++) {
+                                String request = "c" + id + "-w" + writer + "-" + j;
+                                requests.add(request);
+                                lines.append(request).append("\r\n");
+                            }
+                            synchronized (sent) {
+                                sent.addAll(requests);
+                                out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+                            }
+                        }
+                    }catch(Exception e){
+                        error = "writer-" + writer + ": " + e;
+                    }
+                }, "writer-" + id + "-" + w);
+                t.start();
+            }
+
+            Thread reader = new Thread(this::readReplies, "reader-" + id);
+            reader.start();
+        }
+
+        private void readReplies() {
+            try{
+                InputStream in = socket.getInputStream();
+                StringBuilder pending = new StringBuilder();
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while (received < expected && error == null && (n = in.read(buf)) != -1) {
+                    pending.append(new String(buf, 0, n, StandardCharsets.US_ASCII));
+                    int from = 0;
+                    int idx;
+                    while ((idx = pending.indexOf(PROMPT, from)) >= 0) {
+                        String reply = pending.substring(from, idx);
+                        String request;
+                        synchronized (sent) {
+                            request = sent.get(received);
+                        }
+                        if (!reply.equals(request)) {
+                            error = "reply #" + received + " was '" + reply + "', expected '" + request + "'";
+                            break;
+                        }
+                        received++;
+                        from = idx + PROMPT.length();
+                    }
+                    pending.delete(0, from);
+                }
+                if (error == null && received < expected) {
+                    error = "connection closed after " + received + " of " + expected + " replies";
+                }
+                socket.close();
+            }catch(Exception e){
+                error = e.toString();
+            }finally {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package cn.wanxh.reactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 11:05
+ * @Author: 阿左不是蜗牛
+ * @Description: 连接的发送队列
+ *  任意线程都可以入队（业务线程池产生的响应也在这里排队），只有 Reactor 线程负责写出；
+ *  每次写出时把多个缓冲区拼成 ByteBuffer[] 做聚集写，部分写出的缓冲区留在队头等待下次可写。
+ *  待发送字节数超过高水位时不可写（isWritable() 返回 false），处理器据此暂停读取，
+ *  直到降到低水位以下才恢复，慢消费者不会撑爆内存。
+ */
+public class OutboundQueue {
+
+    public static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+    public static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+
+    // 一次聚集写最多携带的缓冲区个数
+    private static final int MAX_BATCH = 64;
+
+    // 一次 write() 调用中最多尝试写的轮数，避免一个连接长时间占用 Reactor 线程
+    private static final int WRITE_SPIN_COUNT = 16;
+
+    private final BufferPool bufferPool;
+
+    private final int lowWaterMark;
+    private final int highWaterMark;
+
+    private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+
+    // 已经从 queue 取出、正在写的缓冲区，只由 Reactor 线程访问
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_BATCH];
+    private int batchSize;
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private volatile boolean writable = true;
+
+    // release() 之后不再接收新的缓冲区
+    private volatile boolean closed;
+
+    public OutboundQueue(BufferPool bufferPool) {
+        this(bufferPool, DEFAULT_LOW_WATER_MARK, DEFAULT_HIGH_WATER_MARK);
+    }
+
+    public OutboundQueue(BufferPool bufferPool, int lowWaterMark, int highWaterMark) {
+        if (lowWaterMark < 0 || highWaterMark < lowWaterMark) {
+            throw new IllegalArgumentException("lowWaterMark: " + lowWaterMark + ", highWaterMark: " + highWaterMark);
+        }
+        this.bufferPool = bufferPool;
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * 入队一个处于读模式的缓冲区，写完后归还到缓冲池
+     * @return 连接已经关闭时返回 false，缓冲区没有入队，由调用方归还
+     */
+    public boolean add(ByteBuffer buffer) {
+        if (closed) {
+            return false;
+        }
+        int size = buffer.remaining();
+        if (size == 0) {
+            bufferPool.release(buffer);
+            return true;
+        }
+        queue.offer(buffer);
+        if (closed) {
+            // 与 release() 并发：release() 可能已经清空过队列，刚入队的缓冲区由这里归还
+            releaseQueued();
+            return true;
+        }
+        if (pendingBytes.addAndGet(size) > highWaterMark) {
+            writable = false;
+        }
+        return true;
+    }
+
+    /**
+     * 尽可能多地写出排队的数据，socket 发送缓冲区写满时返回（只能由 Reactor 线程调用）
+     * @return 本次写出的字节数
+     */
+    public long write(GatheringByteChannel channel) throws IOException {
+        long total = 0;
+        try{
+            for (int spin = 0; spin < WRITE_SPIN_COUNT; spin++) {
+                // 从队列中补充到批次里
+                ByteBuffer next;
+                while (batchSize < MAX_BATCH && (next = queue.poll()) != null) {
+                    batch[batchSize++] = next;
+                }
+                if (batchSize == 0) {
+                    break;
+                }
+
+                long written = channel.write(batch, 0, batchSize);
+                total += written;
+
+                // 释放已经完全写出的缓冲区，部分写出的留在队头
+                int done = 0;
+                while (done < batchSize && !batch[done].hasRemaining()) {
+                    bufferPool.release(batch[done]);
+                    done++;
+                }
+                if (done > 0) {
+                    System.arraycopy(batch, done, batch, 0, batchSize - done);
+                    for (int i = batchSize - done; i < batchSize; i++) {
+                        batch[i] = null;
+                    }
+                    batchSize -= done;
+                }
+                if (batchSize > 0) {
+                    // socket 发送缓冲区已满
+                    break;
+                }
+            }
+        }finally {
+            if (total > 0 && pendingBytes.addAndGet(-total) < lowWaterMark) {
+                writable = true;
+            }
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return pendingBytes.get() == 0;
+    }
+
+    public long pendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * 待发送字节数超过高水位后返回 false，降到低水位以下后才重新返回 true
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * 连接关闭时归还所有未写出的缓冲区，之后 add() 不再接收新的缓冲区（只能由 Reactor 线程调用）
+     */
+    public void release() {
+        closed = true;
+        for (int i = 0; i < batchSize; i++) {
+            bufferPool.release(batch[i]);
+            batch[i] = null;
+        }
+        batchSize = 0;
+        releaseQueued();
+        pendingBytes.set(0);
+    }
+
+    private void releaseQueued() {
+        ByteBuffer buffer;
+        while ((buffer = queue.poll()) != null) {
+            bufferPool.release(buffer);
+        }
+    }
+}
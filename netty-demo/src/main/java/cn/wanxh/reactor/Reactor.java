@@ -3,19 +3,22 @@ package cn.wanxh.reactor;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @program: netty-wanxh
  * @Date: 2022/7/5 23:03
  * @Author: 阿左不是蜗牛
  * @Description: Reactor 单线程模式
+ *  shutdownGracefully() 停止接收新连接，已读取的请求处理完、响应写完后关闭连接，期限到达时强制关闭剩余连接，
+ *  然后关闭 Selector 和业务线程池，Reactor 线程退出 run()
  */
-public class Reactor implements Runnable{
+public class Reactor implements Runnable, EventLoop {
     /**
      * Reactor的定义：是一个或多个输入事件的处理模式，用于处理并传递给服务处理程序的服务请求。
      * 服务处理程序判断传入请求发生的事件，并将它们同步的分派给关联的请求处理程序。
@@ -38,27 +41,85 @@ public class Reactor implements Runnable{
      *
      */
 
-    final Selector selector; // 选择器
+    final ReactorSelector selector; // 选择器（数组实现的就绪 key 集合，空轮询时自动重建）
 
     final ServerSocketChannel serverSocket; // 服务端socket通道
 
+    final BufferPool bufferPool = new BufferPool(); // 该 Reactor 上所有连接共用的缓冲池
+
+    // 其他线程提交到 Reactor 线程执行的任务（如业务线程处理完后的发送）
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // 空闲连接检测的时间轮，由 select(timeout) 驱动
+    final IdleTimeoutWheel idleWheel = new IdleTimeoutWheel();
+
+    // 业务线程池，使用 MultiThreadHandler 时业务处理在这里执行
+    final WorkPool workPool = WorkPool.fromSystemProperties();
+
+    // 运行指标，通过 JMX 发布
+    final ReactorMetrics metrics = new ReactorMetrics("Reactor", this, workPool);
+
+    // 读缓冲区的自适应大小和每次读事件的读取预算
+    RecvBufferAllocator recvBufferAllocator = new RecvBufferAllocator();
+
+    // 接收连接的批量上限、最大连接数、速率限制和计数
+    final AcceptControl acceptControl = new AcceptControl();
+
+    // Reactor 线程的定时任务（如限速后恢复接收连接）
+    private final ScheduledTaskQueue scheduledTasks = new ScheduledTaskQueue();
+
+    // 运行 run() 的线程，未启动时为 null
+    private volatile Thread thread;
+
+    // 是否正在排空（优雅关闭中），只由 Reactor 线程访问
+    private boolean draining;
+
+    // 开始排空时的连接数、期限到达时被强制关闭的连接数，run() 退出后由关闭线程读取
+    private int drainingConnections;
+    private int forcedConnections;
+
+    // run() 退出时计数
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private ShutdownReport shutdownReport;
+
     public Reactor(int port) throws IOException {
-        selector = Selector.open();
+        this(port, AcceptControl.DEFAULT_BACKLOG);
+    }
+
+    /**
+     * @param backlog 监听 socket 的 backlog，重连风暴时内核中等待接收的连接数上限
+     */
+    public Reactor(int port, int backlog) throws IOException {
+        acceptControl.setBacklog(backlog);
+        selector = new ReactorSelector();
         serverSocket = ServerSocketChannel.open();
-        serverSocket.socket().bind(new InetSocketAddress(port)); // 绑定端口
+        serverSocket.socket().bind(new InetSocketAddress(port), backlog); // 绑定端口
         serverSocket.configureBlocking(false); // 设置成非阻塞
         // serverSocketChannel 注册到 selector上, 并关注一个事件(连接就绪)
-        SelectionKey selectionKey = serverSocket.register(selector, SelectionKey.OP_ACCEPT);
+        SelectionKey selectionKey = serverSocket.register(selector.unwrap(), SelectionKey.OP_ACCEPT);
 
         // 关联事件的处理程序 (回调函数)
         selectionKey.attach(new Acceptor());
 
+        metrics.register(port);
+        acceptControl.register(port);
     }
 
 
     public static void main(String[] args) {
         try{
-            Thread reactor = new Thread(new Reactor(10086));
+            Reactor server = new Reactor(10086);
+            server.setIdleTimeouts(0, 0, 300, TimeUnit.SECONDS); // 5 分钟没有读写的连接被关闭
+            // 收到 SIGTERM 时优雅关闭，最多等待 30 秒
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try{
+                    System.out.println(server.shutdownGracefully(30, TimeUnit.SECONDS));
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }, "Reactor-shutdown"));
+            Thread reactor = new Thread(server);
             reactor.setName("Reactor");
             reactor.start();
             reactor.join();
@@ -71,16 +132,28 @@ public class Reactor implements Runnable{
 
     @Override
     public void run() {
+        thread = Thread.currentThread();
         try {
             while (!Thread.interrupted()) {
 
-                selector.select(); // 阻塞，直到有事件到达
+                long taskStart = System.nanoTime();
+                runAllTasks();
+                scheduledTasks.runDue(taskStart);
+                // 排空完毕（连接可能在任务、定时任务或上一轮分发中关闭），不再进入 select()
+                if (draining && acceptControl.getConnections() == 0) {
+                    break;
+                }
+                long selectStart = System.nanoTime();
+                // 阻塞，直到有事件到达、有任务提交，或到达时间轮的下一个刻度、定时任务到期
+                selector.select(tasks, scheduledTasks.nextTimeoutMillis(selectStart, idleWheel.nextTimeoutMillis(selectStart)));
+                long dispatchStart = System.nanoTime();
 
-                // 拿到所有就绪通道 SelectionKey 的集合 (所有就绪的通道)
-                Set<SelectionKey> selectionKeys = selector.selectedKeys();
-                Iterator<SelectionKey> iterator = selectionKeys.iterator();
-                while (iterator.hasNext()){
-                    SelectionKey key = iterator.next();
+                // 拿到所有就绪通道 SelectionKey 的集合 (所有就绪的通道)，按下标遍历
+                SelectedSelectionKeySet selectionKeys = selector.selectedKeys();
+                int keys = selectionKeys.size;
+                for (int i = 0; i < keys; i++) {
+                    SelectionKey key = selectionKeys.keys[i];
+                    selectionKeys.keys[i] = null;
                     // 就绪事件的分发
                     dispatch(key);  // 由于handler可能阻塞，从而导致Reactor线程在此阻塞
                     /**
@@ -92,51 +165,224 @@ public class Reactor implements Runnable{
                      *      快速完成的场景。
                      */
                 }
-                selectionKeys.clear();
+                selectionKeys.reset();
+                long dispatchEnd = System.nanoTime();
+                metrics.recordLoop(selectStart - taskStart, dispatchStart - selectStart, dispatchEnd - dispatchStart, keys);
 
+                // 关闭空闲超时的连接
+                idleWheel.expire(dispatchEnd);
             }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            closeSelector();
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * 优雅关闭：停止接收新连接，已读取的请求处理完、响应写完后关闭连接；
+     * 期限到达时强制关闭剩余连接，然后关闭 Selector、业务线程池，注销 JMX
+     * 需要在 Reactor 线程启动之后调用，重复调用返回第一次的结果
+     * @param timeout 排空连接的期限
+     * @return 排空和被强制关闭的连接数
+     */
+    public synchronized ShutdownReport shutdownGracefully(long timeout, TimeUnit unit) throws InterruptedException {
+        if (shutdownReport != null) {
+            return shutdownReport;
+        }
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+
+        Thread reactorThread = thread;
+        if (reactorThread == null) {
+            // 没有启动过，直接释放资源
+            closeSelector();
+        } else {
+            execute(() -> startDrain(deadline));
+            // 期限到达时 Reactor 线程会强制关闭剩余连接，多等一会儿；仍未退出说明处理器阻塞了 Reactor 线程
+            if (!terminated.await(Math.max(0, deadline - System.nanoTime()) + TimeUnit.SECONDS.toNanos(1), TimeUnit.NANOSECONDS)) {
+                reactorThread.interrupt();
+                terminated.await(1, TimeUnit.SECONDS);
+            }
+        }
+
+        workPool.shutdown();
+        if (!workPool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            workPool.shutdownNow();
+        }
+        metrics.unregister();
+        acceptControl.unregister();
+
+        shutdownReport = new ShutdownReport(drainingConnections - forcedConnections, forcedConnections,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return shutdownReport;
+    }
+
+    /**
+     * 在 Reactor 线程中开始排空
+     */
+    private void startDrain(long deadline) {
+        if (draining) {
+            return;
+        }
+        draining = true;
+        // 停止接收新连接
+        try{
+            serverSocket.close();
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+        drainingConnections = acceptControl.getConnections();
+        selector.drainHandlers();
+        scheduledTasks.schedule(() -> forcedConnections += selector.closeHandlers(),
+                deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void closeSelector() {
+        try{
+            serverSocket.close();
+            selector.close();
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 设置空闲超时，超时的连接会被关闭，为 0 表示不检测；需要在 Reactor 线程启动前调用
+     * @param readerIdleTime 没有读到数据的时间
+     * @param writerIdleTime 没有写出数据的时间
+     * @param allIdleTime 既没有读也没有写的时间
+     */
+    public void setIdleTimeouts(long readerIdleTime, long writerIdleTime, long allIdleTime, TimeUnit unit) {
+        idleWheel.setIdleTimeouts(readerIdleTime, writerIdleTime, allIdleTime, unit);
+    }
+
+    /**
+     * 设置一次 OP_ACCEPT 就绪最多接收的连接数，剩余的连接留在 backlog 中等下一轮
+     */
+    public void setMaxAcceptsPerWakeup(int maxAcceptsPerWakeup) {
+        acceptControl.setMaxAcceptsPerWakeup(maxAcceptsPerWakeup);
+    }
+
+    /**
+     * 设置最大连接数，超过后新连接被立即关闭；0 表示不限制
+     */
+    public void setMaxConnections(int maxConnections) {
+        acceptControl.setMaxConnections(maxConnections);
+    }
+
+    /**
+     * 设置接收连接的速率限制（令牌桶），acceptsPerSecond 为 0 表示不限速
+     * @param acceptsPerSecond 每秒接收的连接数
+     * @param burst 允许的突发连接数
+     */
+    public void setAcceptRateLimit(int acceptsPerSecond, int burst) {
+        acceptControl.setAcceptRateLimit(acceptsPerSecond, burst);
+    }
+
+    /**
+     * 设置读缓冲区的自适应范围（取 BufferPool 的规格 1K/4K/16K/64K），需要在 Reactor 线程启动前调用
+     * @param minimum 最小值
+     * @param initial 新连接的初始值
+     * @param maximum 最大值，不超过 64K
+     */
+    public void setRecvBufferSizes(int minimum, int initial, int maximum) {
+        recvBufferAllocator = new RecvBufferAllocator(minimum, initial, maximum, recvBufferAllocator.maxReadsPerEvent());
+    }
+
+    /**
+     * 设置一次读事件中一个连接最多读取的次数，用完后让出 Reactor 线程；需要在 Reactor 线程启动前调用
+     */
+    public void setMaxReadsPerEvent(int maxReadsPerEvent) {
+        recvBufferAllocator = recvBufferAllocator.withMaxReadsPerEvent(maxReadsPerEvent);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public BufferPool bufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public ReactorMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public RecvBufferAllocator recvBufferAllocator() {
+        return recvBufferAllocator;
+    }
+
+    @Override
+    public WorkPool workPool() {
+        return workPool;
+    }
+
+    private void runAllTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try{
+                task.run();
+            }catch(Exception e){
+                metrics.handlerException();
+                e.printStackTrace();
+            }
         }
     }
 
     void dispatch(SelectionKey key){
         Runnable r = (Runnable) key.attachment();  // 获取key关联的处理器
-        if (r != null){
+        if (r != null && key.isValid()){
             // 执行处理程序
             r.run();  // handler可能阻塞 (不是Thread，仅一个Runnable对象)
         }
     }
 
     /**
-     * 处理连接(建立)就绪事件
+     * 处理连接(建立)就绪事件：一次批量接收多个连接，准入控制见 AcceptControl
      */
     class Acceptor implements Runnable {
 
         @Override
         public void run() {
-            try {
-                SocketChannel socketChannel = serverSocket.accept();
-                if (socketChannel != null) {
-                    System.out.println("-----连接就绪--------");
-                    /**
-                     * 将socketChannel注册到selector上，并关注一个读事件，
-                     * 且为该事件注册一个处理程序(类似回调函数)
-                     * 注意：此处只是一个Runnable，并非一个线程。单线程，从头到尾只有一个Reactor线程
-                     */
-                    new BasicHandler(socketChannel, selector);  // IO的读写及业务处理均由该处理器完成
+            long pauseMillis = acceptControl.accept(serverSocket, this::register);
+            if (pauseMillis > 0) {
+                // 限速或 accept() 出错：暂停关注 OP_ACCEPT，新连接留在 backlog 中，到期后恢复
+                setAcceptInterest(0);
+                scheduledTasks.schedule(() -> setAcceptInterest(SelectionKey.OP_ACCEPT), pauseMillis, TimeUnit.MILLISECONDS);
+            }
+        }
 
-                    /**
-                     * 也可以使用多线程处理器
-                     * 将IO的读写与业务处理分离，将业务逻辑交由线程池处理
-                     */
-                    // new MultiThreadHandler(selector, socketChannel);
+        private void setAcceptInterest(int ops) {
+            // Selector 可能已经重建，每次从通道重新获取 key
+            SelectionKey key = serverSocket.keyFor(selector.unwrap());
+            if (key != null && key.isValid()) {
+                key.interestOps(ops);
+            }
+        }
 
-                }
+        private void register(SocketChannel socketChannel) throws IOException {
+            /**
+             * 将socketChannel注册到selector上，并关注一个读事件，
+             * 且为该事件注册一个处理程序(类似回调函数)
+             * 注意：此处只是一个Runnable，并非一个线程。单线程，从头到尾只有一个Reactor线程
+             */
+            BasicHandler handler = new BasicHandler(socketChannel, selector.unwrap(), Reactor.this);  // IO的读写及业务处理均由该处理器完成
 
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            /**
+             * 也可以使用多线程处理器
+             * 将IO的读写与业务处理分离，将业务逻辑交由线程池处理
+             */
+            // BasicHandler handler = new MultiThreadHandler(selector.unwrap(), socketChannel, Reactor.this);
+
+            handler.closeListener = acceptControl::connectionClosed;
+            idleWheel.add(handler, System.nanoTime());
         }
     }
 
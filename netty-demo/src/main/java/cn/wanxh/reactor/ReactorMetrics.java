@@ -0,0 +1,186 @@
+package cn.wanxh.reactor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 18:05
+ * @Author: 阿左不是蜗牛
+ * @Description: 单个 Reactor 线程的指标，每个 Reactor 一个实例，通过 JMX 发布
+ *  直方图和读写字节数只由 Reactor 线程写（单写者，lazySet），记录时不加锁、不分配对象；
+ *  异常数可能由业务线程写，使用原子自增（异常路径，不在热点上）。
+ */
+final class ReactorMetrics implements ReactorMetricsMXBean {
+
+    static final String DOMAIN = "cn.wanxh.reactor";
+
+    private final String name;
+
+    // 所属的 Reactor，resetHistograms() 交给它在 Reactor 线程中执行
+    private final Executor eventLoop;
+
+    // 所属服务的业务线程池
+    private final WorkPool workPool;
+
+    private final LatencyHistogram selectTime = new LatencyHistogram();
+    private final LatencyHistogram dispatchTime = new LatencyHistogram();
+    private final LatencyHistogram taskTime = new LatencyHistogram();
+    private final LatencyHistogram keysPerWakeup = new LatencyHistogram();
+    private final LatencyHistogram workPoolDepth = new LatencyHistogram();
+
+    private final AtomicLong wakeups = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong handlerExceptions = new AtomicLong();
+
+    private ObjectName objectName;
+
+    ReactorMetrics(String name, Executor eventLoop, WorkPool workPool) {
+        this.name = name;
+        this.eventLoop = eventLoop;
+        this.workPool = workPool;
+    }
+
+    /**
+     * 一轮事件循环：执行任务、阻塞在 select()、分发就绪事件的耗时，以及就绪的 key 数
+     */
+    void recordLoop(long taskNanos, long selectNanos, long dispatchNanos, int keys) {
+        taskTime.record(taskNanos);
+        selectTime.record(selectNanos);
+        dispatchTime.record(dispatchNanos);
+        keysPerWakeup.record(keys);
+        wakeups.lazySet(wakeups.get() + 1);
+    }
+
+    void bytesRead(long bytes) {
+        bytesRead.lazySet(bytesRead.get() + bytes);
+    }
+
+    void bytesWritten(long bytes) {
+        bytesWritten.lazySet(bytesWritten.get() + bytes);
+    }
+
+    void workPoolHandOff(int pending) {
+        workPoolDepth.record(pending);
+    }
+
+    /**
+     * 可以由任意线程调用
+     */
+    void handlerException() {
+        handlerExceptions.incrementAndGet();
+    }
+
+    /**
+     * 注册到平台 MBeanServer；同名的 MBean 已存在等失败情况只打印日志，不影响服务
+     */
+    void register(int port) {
+        try{
+            ObjectName on = new ObjectName(DOMAIN + ":type=Reactor,port=" + port + ",name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        }catch(JMException e){
+            System.err.println(name + ": failed to register metrics MBean: " + e);
+        }
+    }
+
+    void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(objectName);
+        }catch(JMException e){
+            System.err.println(name + ": failed to unregister metrics MBean: " + e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public HistogramSnapshot getSelectTime() {
+        return selectTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getDispatchTime() {
+        return dispatchTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getTaskTime() {
+        return taskTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getKeysPerWakeup() {
+        return keysPerWakeup.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getWorkPoolDepthAtHandOff() {
+        return workPoolDepth.snapshot();
+    }
+
+    @Override
+    public long getWakeups() {
+        return wakeups.get();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public long getHandlerExceptions() {
+        return handlerExceptions.get();
+    }
+
+    @Override
+    public int getWorkPoolQueueDepth() {
+        return workPool.queueDepth();
+    }
+
+    @Override
+    public int getWorkPoolPending() {
+        return workPool.pending();
+    }
+
+    @Override
+    public void resetHistograms() {
+        eventLoop.execute(() -> {
+            selectTime.reset();
+            dispatchTime.reset();
+            taskTime.reset();
+            keysPerWakeup.reset();
+            workPoolDepth.reset();
+        });
+    }
+
+    @Override
+    public String toString() {
+        return name + " metrics(wakeups: " + getWakeups()
+                + ", bytesRead: " + getBytesRead()
+                + ", bytesWritten: " + getBytesWritten()
+                + ", handlerExceptions: " + getHandlerExceptions()
+                + ", selectTime: [" + getSelectTime()
+                + "], dispatchTime: [" + getDispatchTime()
+                + "], keysPerWakeup: [" + getKeysPerWakeup() + "])";
+    }
+}
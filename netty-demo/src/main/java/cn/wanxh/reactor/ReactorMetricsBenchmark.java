@@ -0,0 +1,79 @@
+package cn.wanxh.reactor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 18:20
+ * @Author: 阿左不是蜗牛
+ * @Description: 指标记录开销的微基准：模拟一轮事件循环中的计时和记录（三次 nanoTime + recordLoop + 读写字节数），
+ *  与只有计时、不记录的循环对比每轮多出的耗时，并通过 ThreadMXBean 统计记录过程中分配的字节数（应为 0）
+ */
+public class ReactorMetricsBenchmark {
+
+    private static final int ITERATIONS = 20_000_000;
+    private static final int ROUNDS = 5;
+
+    // 防止循环被 JIT 消除
+    static long sink;
+
+    public static void main(String[] args) {
+        ReactorMetrics metrics = new ReactorMetrics("benchmark", Runnable::run, WorkPool.fromSystemProperties());
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long baseline = baseline(ITERATIONS);
+            long allocatedBefore = allocatedBytes();
+            long instrumented = instrumented(metrics, ITERATIONS);
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            System.out.printf("round %d: baseline %.1f ns/loop, instrumented %.1f ns/loop, overhead %.1f ns/loop, allocated %s%n",
+                    round,
+                    (double) baseline / ITERATIONS,
+                    (double) instrumented / ITERATIONS,
+                    (double) (instrumented - baseline) / ITERATIONS,
+                    allocated < 0 ? "n/a" : allocated + " bytes");
+        }
+        System.out.println(metrics);
+    }
+
+    private static long baseline(int iterations) {
+        long start = System.nanoTime();
+        long acc = 0;
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            long t1 = System.nanoTime();
+            long t2 = System.nanoTime();
+            acc += t2 - t1 + (t1 - t0) + (i & 7);
+        }
+        sink += acc;
+        return System.nanoTime() - start;
+    }
+
+    private static long instrumented(ReactorMetrics metrics, int iterations) {
+        long start = System.nanoTime();
+        long acc = 0;
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            long t1 = System.nanoTime();
+            long t2 = System.nanoTime();
+            metrics.recordLoop(0, t1 - t0, t2 - t1, i & 7);
+            metrics.bytesRead(64);
+            metrics.bytesWritten(74);
+            acc += t2 - t1 + (t1 - t0) + (i & 7);
+        }
+        sink += acc;
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 当前线程累计分配的字节数，JVM 不支持时返回 -1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
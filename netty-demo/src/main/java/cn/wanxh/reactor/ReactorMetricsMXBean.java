@@ -0,0 +1,65 @@
+package cn.wanxh.reactor;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 18:00
+ * @Author: 阿左不是蜗牛
+ * @Description: Reactor 线程的运行指标，每个 Reactor 线程注册一个，
+ *  ObjectName 形如 cn.wanxh.reactor:type=Reactor,port=10088,name=subReactor-0
+ *  耗时的单位都是纳秒，计数从启动（或上一次 resetHistograms）开始累计
+ */
+public interface ReactorMetricsMXBean {
+
+    String getName();
+
+    /**
+     * 每一轮阻塞在 select() 上的时间
+     */
+    HistogramSnapshot getSelectTime();
+
+    /**
+     * 每一轮分发就绪事件（执行处理器）的时间
+     */
+    HistogramSnapshot getDispatchTime();
+
+    /**
+     * 每一轮执行任务队列（注册连接、业务线程交回的发送等）的时间
+     */
+    HistogramSnapshot getTaskTime();
+
+    /**
+     * 每次 select() 返回时就绪的 key 数
+     */
+    HistogramSnapshot getKeysPerWakeup();
+
+    /**
+     * 提交给业务线程池时，线程池中已有的未完成任务数
+     */
+    HistogramSnapshot getWorkPoolDepthAtHandOff();
+
+    long getWakeups();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    /**
+     * 处理器和任务抛出的异常数，不含客户端正常关闭连接（EOF）
+     */
+    long getHandlerExceptions();
+
+    /**
+     * 所属服务的业务线程池当前排队的任务数
+     */
+    int getWorkPoolQueueDepth();
+
+    /**
+     * 所属服务的业务线程池当前已提交未完成的任务数
+     */
+    int getWorkPoolPending();
+
+    /**
+     * 清空直方图，在 Reactor 线程中执行；计数器不清空
+     */
+    void resetHistograms();
+}
@@ -0,0 +1,254 @@
+package cn.wanxh.reactor;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 16:30
+ * @Author: 阿左不是蜗牛
+ * @Description: Reactor 使用的 Selector 包装
+ *  1. 通过反射把 Selector 内部的 selectedKeys/publicSelectedKeys 替换成数组实现的 SelectedSelectionKeySet，
+ *     Reactor 线程按下标遍历就绪 key，热点路径上不再哈希、不创建 Iterator；
+ *     反射被禁止时（如 JDK 9+ 未开放 sun.nio.ch）退化为普通 Selector，就绪 key 拷贝到同一个数组中遍历。
+ *  2. 检测 epoll 空轮询：select() 没有被唤醒、没有超时、也没有就绪事件却连续返回，
+ *     次数达到阈值后重建 Selector，把所有通道重新注册到新的 Selector 上，避免 CPU 100%。
+ *
+ *  只能由 Reactor 线程调用 select()，wakeup() 可以由任意线程调用。
+ *    -Dreactor.selector.noKeySetOptimization=true 关闭 key 集合替换
+ *    -Dreactor.selector.autoRebuildThreshold=512 空轮询阈值，0 表示不重建
+ */
+final class ReactorSelector {
+
+    private static final boolean DISABLE_KEY_SET_OPTIMIZATION = Boolean.getBoolean("reactor.selector.noKeySetOptimization");
+
+    private static final int AUTO_REBUILD_THRESHOLD = Integer.getInteger("reactor.selector.autoRebuildThreshold", 512);
+
+    private final SelectedSelectionKeySet selectedKeys = new SelectedSelectionKeySet();
+
+    private volatile Selector selector;
+
+    // 是否成功替换了 Selector 内部的 key 集合
+    private boolean optimized;
+
+    // 是否已经唤醒过 select()，避免每提交一个任务都调用一次 wakeup()
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    // 连续的提前返回且没有就绪事件的 select() 次数
+    private int emptySelects;
+
+    private int rebuilds;
+
+    ReactorSelector() throws IOException {
+        selector = openSelector();
+    }
+
+    /**
+     * 当前的 Selector，重建后会变化，注册通道时不要缓存
+     */
+    Selector unwrap() {
+        return selector;
+    }
+
+    boolean isOptimized() {
+        return optimized;
+    }
+
+    int rebuilds() {
+        return rebuilds;
+    }
+
+    private Selector openSelector() throws IOException {
+        Selector newSelector = Selector.open();
+        optimized = !DISABLE_KEY_SET_OPTIMIZATION && replaceSelectedKeys(newSelector, selectedKeys);
+        return newSelector;
+    }
+
+    /**
+     * 把 sun.nio.ch.SelectorImpl 中的 selectedKeys、publicSelectedKeys 替换为数组实现；
+     * 优先使用反射，JDK 9+ 模块化后反射被禁止时使用 Unsafe 直接写字段
+     */
+    private static boolean replaceSelectedKeys(Selector selector, SelectedSelectionKeySet keySet) {
+        try{
+            Class<?> selectorImpl = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+            if (!selectorImpl.isAssignableFrom(selector.getClass())) {
+                return false;
+            }
+            Field selectedKeysField = selectorImpl.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField = selectorImpl.getDeclaredField("publicSelectedKeys");
+            try{
+                selectedKeysField.setAccessible(true);
+                publicSelectedKeysField.setAccessible(true);
+                selectedKeysField.set(selector, keySet);
+                publicSelectedKeysField.set(selector, keySet);
+                return true;
+            }catch(RuntimeException | IllegalAccessException e){
+                // JDK 9+ 抛出 InaccessibleObjectException，尝试 Unsafe
+                return putWithUnsafe(selector, keySet, selectedKeysField, publicSelectedKeysField);
+            }
+        }catch(Throwable t){
+            return false;
+        }
+    }
+
+    private static boolean putWithUnsafe(Selector selector, Object value, Field... fields) throws Exception {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        Object unsafe = theUnsafe.get(null);
+        Method objectFieldOffset = unsafeClass.getMethod("objectFieldOffset", Field.class);
+        Method putObject = unsafeClass.getMethod("putObject", Object.class, long.class, Object.class);
+        for (Field field : fields) {
+            long offset = (Long) objectFieldOffset.invoke(unsafe, field);
+            putObject.invoke(unsafe, selector, offset, value);
+        }
+        return true;
+    }
+
+    /**
+     * 等待就绪事件，返回后通过 selectedKeys() 按下标遍历
+     * @param tasks Reactor 的任务队列，非空时不阻塞
+     * @param timeoutMillis 超时时间，0 表示一直阻塞直到有事件或被唤醒
+     */
+    int select(Queue<?> tasks, long timeoutMillis) throws IOException {
+        // 先复位再检查任务队列：检查之后提交的任务一定会调用 wakeup()，不会丢失唤醒
+        wakenUp.set(false);
+        long start = System.nanoTime();
+        int selected;
+        if (!tasks.isEmpty()) {
+            selected = selector.selectNow();
+        } else if (timeoutMillis > 0) {
+            selected = selector.select(timeoutMillis);
+        } else {
+            selected = selector.select();
+        }
+
+        if (!optimized) {
+            copySelectedKeys();
+        }
+
+        if (selected > 0 || wakenUp.get() || !tasks.isEmpty()
+                || (timeoutMillis > 0 && System.nanoTime() - start >= timeoutMillis * 1_000_000L)) {
+            // 有事件、被唤醒或正常超时
+            emptySelects = 0;
+        } else if (AUTO_REBUILD_THRESHOLD > 0 && ++emptySelects >= AUTO_REBUILD_THRESHOLD) {
+            // 空轮询：select() 无故提前返回
+            System.err.println(Thread.currentThread().getName() + ": " + emptySelects
+                    + " empty selects in a row, rebuilding selector");
+            rebuild();
+            emptySelects = 0;
+            selected = selector.selectNow();
+            if (!optimized) {
+                copySelectedKeys();
+            }
+        }
+        return selected;
+    }
+
+    private void copySelectedKeys() {
+        Set<SelectionKey> keys = selector.selectedKeys();
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (Iterator<SelectionKey> it = keys.iterator(); it.hasNext(); ) {
+            selectedKeys.add(it.next());
+            it.remove();
+        }
+    }
+
+    /**
+     * 本轮就绪的 key，遍历时逐个置空，遍历结束后调用 reset()
+     */
+    SelectedSelectionKeySet selectedKeys() {
+        return selectedKeys;
+    }
+
+    /**
+     * 唤醒阻塞在 select() 上的 Reactor 线程，同一轮中只调用一次 Selector.wakeup()
+     */
+    void wakeup() {
+        if (wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * 新建 Selector，把旧 Selector 上的有效通道连同关注事件、附加对象一起迁移过去
+     */
+    void rebuild() throws IOException {
+        Selector oldSelector = selector;
+        Selector newSelector = openSelector();
+        selectedKeys.reset();
+
+        int migrated = 0;
+        for (SelectionKey key : oldSelector.keys()) {
+            SelectableChannel channel = key.channel();
+            if (!key.isValid() || channel.keyFor(newSelector) != null) {
+                continue;
+            }
+            int interestOps = key.interestOps();
+            Object attachment = key.attachment();
+            key.cancel();
+            SelectionKey newKey = channel.register(newSelector, interestOps, attachment);
+            if (attachment instanceof BasicHandler) {
+                ((BasicHandler) attachment).selectionKey = newKey;
+            }
+            migrated++;
+        }
+
+        selector = newSelector;
+        rebuilds++;
+        try{
+            oldSelector.close();
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+        System.err.println(Thread.currentThread().getName() + ": selector rebuilt, migrated " + migrated + " channels");
+    }
+
+    /**
+     * 通知注册在该 Selector 上的所有连接排空（见 BasicHandler.drain()），只能由 Reactor 线程调用
+     * @return 通知的连接数
+     */
+    int drainHandlers() {
+        int count = 0;
+        // 排空时可能直接关闭连接，先拷贝一份
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            Object attachment = key.attachment();
+            if (attachment instanceof BasicHandler && ((BasicHandler) attachment).state != BasicHandler.CLOSED) {
+                count++;
+                ((BasicHandler) attachment).drain();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 强制关闭所有尚未关闭的连接，只能由 Reactor 线程调用
+     * @return 关闭的连接数
+     */
+    int closeHandlers() {
+        int count = 0;
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            Object attachment = key.attachment();
+            if (attachment instanceof BasicHandler && ((BasicHandler) attachment).state != BasicHandler.CLOSED) {
+                count++;
+                ((BasicHandler) attachment).close();
+            }
+        }
+        return count;
+    }
+
+    void close() throws IOException {
+        selector.close();
+    }
+}
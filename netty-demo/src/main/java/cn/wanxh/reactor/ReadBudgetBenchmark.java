@@ -0,0 +1,115 @@
+package cn.wanxh.reactor;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 19:10
+ * @Author: 阿左不是蜗牛
+ * @Description: 读缓冲区大小与读取预算的吞吐/公平性对比：
+ *  同一个单线程 Reactor 上，一个连接持续批量上传（吞吐），另一个连接一问一答地发送小请求（延迟），
+ *  分别在不同配置下运行，输出批量连接的吞吐和小请求的延迟分位数。
+ *  固定小缓冲区时每个就绪事件只读 1K，选择器往返次数多；读取预算过大时批量连接长时间占住 Reactor 线程，小请求的延迟上升。
+ */
+public class ReadBudgetBenchmark {
+
+    private static final long DURATION_MILLIS = 3000;
+    private static final int LINE_LENGTH = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int port = 10195;
+        run(port++, "fixed 1K, 1 read/event", 1024, 1024, 1024, 1);
+        run(port++, "adaptive 1K-64K, 1 read/event", 1024, 1024, 64 * 1024, 1);
+        run(port++, "adaptive 1K-64K, 16 reads/event", 1024, 1024, 64 * 1024, 16);
+        run(port++, "fixed 64K, 1024 reads/event", 64 * 1024, 64 * 1024, 64 * 1024, 1024);
+        System.exit(0);
+    }
+
+    private static void run(int port, String label, int minimum, int initial, int maximum, int maxReadsPerEvent) throws Exception {
+        Reactor reactor = new Reactor(port);
+        reactor.setRecvBufferSizes(minimum, initial, maximum);
+        reactor.setMaxReadsPerEvent(maxReadsPerEvent);
+        Thread thread = new Thread(reactor, "Reactor-" + port);
+        thread.setDaemon(true);
+        thread.start();
+
+        Socket bulk = new Socket("127.0.0.1", port);
+        Socket probe = new Socket("127.0.0.1", port);
+        probe.setTcpNoDelay(true);
+        long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+
+        // 批量上传：持续写入定长的行，另一个线程读取响应，避免服务端因发送队列积压而暂停读取
+        long[] uploaded = new long[1];
+        Thread writer = new Thread(() -> {
+            byte[] line = new byte[LINE_LENGTH + 2];
+            Arrays.fill(line, (byte) 'x');
+            line[LINE_LENGTH] = '\r';
+            line[LINE_LENGTH + 1] = '\n';
+            byte[] chunk = new byte[line.length * 64];
+            for (int i = 0; i < 64; i++) {
+                System.arraycopy(line, 0, chunk, i * line.length, line.length);
+            }
+            try{
+                OutputStream out = bulk.getOutputStream();
+                while (System.currentTimeMillis() < deadline) {
+                    out.write(chunk);
+                    uploaded[0] += chunk.length;
+                }
+            }catch(Exception e){
+                // 连接关闭
+            }
+        });
+        Thread drainer = new Thread(() -> {
+            try{
+                InputStream in = bulk.getInputStream();
+                byte[] buf = new byte[256 * 1024];
+                while (in.read(buf) != -1) {
+                    // 丢弃响应
+                }
+            }catch(Exception e){
+                // 连接关闭
+            }
+        });
+        writer.start();
+        drainer.start();
+
+        // 小请求：一问一答，记录每个请求的往返时间
+        long[] latencies = new long[1 << 20];
+        int samples = 0;
+        OutputStream out = probe.getOutputStream();
+        InputStream in = probe.getInputStream();
+        byte[] request = "ping\r\n".getBytes(StandardCharsets.UTF_8);
+        int replyLength = "ping".length() + BasicHandler.PROMPT.length;
+        byte[] reply = new byte[replyLength];
+        while (System.currentTimeMillis() < deadline && samples < latencies.length) {
+            long start = System.nanoTime();
+            out.write(request);
+            int read = 0;
+            while (read < replyLength) {
+                int n = in.read(reply, read, replyLength - read);
+                if (n < 0) {
+                    throw new IllegalStateException("probe connection closed");
+                }
+                read += n;
+            }
+            latencies[samples++] = System.nanoTime() - start;
+        }
+        writer.join();
+        bulk.close();
+        probe.close();
+        drainer.join();
+
+        Arrays.sort(latencies, 0, samples);
+        System.out.printf("%-36s bulk %7.1f MB/s | probe %6d req, p50 %6d us, p99 %7d us, max %7d us%n",
+                label,
+                uploaded[0] / 1024.0 / 1024.0 / (DURATION_MILLIS / 1000.0),
+                samples,
+                latencies[samples / 2] / 1000,
+                latencies[(int) (samples * 0.99)] / 1000,
+                latencies[samples - 1] / 1000);
+    }
+}
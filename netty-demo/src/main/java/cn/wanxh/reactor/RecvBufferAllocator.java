@@ -0,0 +1,151 @@
+package cn.wanxh.reactor;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 18:40
+ * @Author: 阿左不是蜗牛
+ * @Description: 读缓冲区大小的自适应预测和每次读事件的读取预算，每个服务一份配置，每个连接一个 Handle
+ *  大小在 BufferPool 的规格（1K/4K/16K/64K）之间调整：一次读取填满了缓冲区就升一级，
+ *  连续两次读事件的总字节数都能装进低一级的规格才降一级，避免抖动；
+ *  一次读事件中只要上一次读取填满了缓冲区就继续读，最多读 maxReadsPerEvent 次后让出 Reactor 线程，
+ *  一个持续发送的连接不会饿死同一 Selector 上的其他连接。
+ */
+final class RecvBufferAllocator {
+
+    static final int DEFAULT_MINIMUM = BufferPool.SIZE_CLASSES[0];
+    static final int DEFAULT_INITIAL = BasicHandler.MAXIN;
+    static final int DEFAULT_MAXIMUM = BufferPool.SIZE_CLASSES[BufferPool.SIZE_CLASSES.length - 1];
+    static final int DEFAULT_MAX_READS_PER_EVENT = 16;
+
+    private static final int[] SIZES = BufferPool.SIZE_CLASSES;
+
+    private final int minIndex;
+    private final int initialIndex;
+    private final int maxIndex;
+    private final int maxReadsPerEvent;
+
+    RecvBufferAllocator() {
+        this(DEFAULT_MINIMUM, DEFAULT_INITIAL, DEFAULT_MAXIMUM, DEFAULT_MAX_READS_PER_EVENT);
+    }
+
+    /**
+     * @param minimum 读缓冲区的最小值
+     * @param initial 新连接的初始读缓冲区大小
+     * @param maximum 读缓冲区的最大值，不超过 BufferPool 的最大规格
+     * @param maxReadsPerEvent 一次读事件中最多读取的次数
+     */
+    RecvBufferAllocator(int minimum, int initial, int maximum, int maxReadsPerEvent) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException("minimum: " + minimum + ", initial: " + initial + ", maximum: " + maximum
+                    + " (expected: 0 < minimum <= initial <= maximum)");
+        }
+        if (maximum > DEFAULT_MAXIMUM) {
+            throw new IllegalArgumentException("maximum: " + maximum + " (expected: <= " + DEFAULT_MAXIMUM + ")");
+        }
+        if (maxReadsPerEvent <= 0) {
+            throw new IllegalArgumentException("maxReadsPerEvent: " + maxReadsPerEvent + " (expected: > 0)");
+        }
+        this.minIndex = BufferPool.sizeClass(minimum);
+        this.initialIndex = BufferPool.sizeClass(initial);
+        this.maxIndex = BufferPool.sizeClass(maximum);
+        this.maxReadsPerEvent = maxReadsPerEvent;
+    }
+
+    int maxReadsPerEvent() {
+        return maxReadsPerEvent;
+    }
+
+    /**
+     * 大小范围不变，只修改读取预算
+     */
+    RecvBufferAllocator withMaxReadsPerEvent(int maxReadsPerEvent) {
+        return new RecvBufferAllocator(SIZES[minIndex], SIZES[initialIndex], SIZES[maxIndex], maxReadsPerEvent);
+    }
+
+    Handle newHandle() {
+        return new Handle();
+    }
+
+    @Override
+    public String toString() {
+        return "RecvBufferAllocator(min: " + SIZES[minIndex]
+                + ", initial: " + SIZES[initialIndex]
+                + ", max: " + SIZES[maxIndex]
+                + ", maxReadsPerEvent: " + maxReadsPerEvent + ')';
+    }
+
+    /**
+     * 单个连接的预测状态，只在 Reactor 线程中访问
+     */
+    final class Handle {
+        private int index = initialIndex;
+        private boolean decreaseNow;
+
+        // 本次读事件的统计
+        private int reads;
+        private int totalBytesRead;
+        private boolean lastReadFull;
+
+        /**
+         * 下一次读取应借用的缓冲区大小
+         */
+        int guess() {
+            return SIZES[index];
+        }
+
+        /**
+         * 每次读事件开始时调用
+         */
+        void reset() {
+            reads = 0;
+            totalBytesRead = 0;
+            lastReadFull = false;
+        }
+
+        /**
+         * 记录一次读取
+         * @param bytes 读取的字节数
+         * @param attempted 本次读取时缓冲区的剩余空间
+         */
+        void lastBytesRead(int bytes, int attempted) {
+            reads++;
+            lastReadFull = bytes > 0 && bytes == attempted;
+            if (bytes > 0) {
+                totalBytesRead += bytes;
+            }
+            if (lastReadFull && index < maxIndex) {
+                // 缓冲区被填满，说明还有数据，立即放大，不等读事件结束
+                index++;
+                decreaseNow = false;
+            }
+        }
+
+        /**
+         * 上一次读取填满了缓冲区且还有预算时继续读取
+         */
+        boolean continueReading() {
+            return lastReadFull && reads < maxReadsPerEvent;
+        }
+
+        /**
+         * 读事件结束时调用，根据本次读到的总字节数调整下一次的大小
+         */
+        void readComplete() {
+            record(totalBytesRead);
+        }
+
+        private void record(int actual) {
+            if (index > minIndex && actual <= SIZES[index - 1]) {
+                if (decreaseNow) {
+                    index--;
+                    decreaseNow = false;
+                } else {
+                    decreaseNow = true;
+                }
+            } else if (actual >= SIZES[index]) {
+                index = Math.min(index + 1, maxIndex);
+                decreaseNow = false;
+            }
+        }
+    }
+}
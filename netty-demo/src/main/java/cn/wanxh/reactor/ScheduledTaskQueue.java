@@ -0,0 +1,71 @@
+package cn.wanxh.reactor;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 19:40
+ * @Author: 阿左不是蜗牛
+ * @Description: Reactor 线程的定时任务，只由 Reactor 线程访问（其他线程先 execute() 再 schedule()）
+ *  与空闲检测时间轮一样由 select(timeout) 驱动：Reactor 在 select() 上最多等到最早的任务到期
+ */
+final class ScheduledTaskQueue {
+
+    private final PriorityQueue<ScheduledTask> queue = new PriorityQueue<>();
+
+    // 到期时间相同的任务按提交顺序执行
+    private long sequence;
+
+    void schedule(Runnable task, long delay, TimeUnit unit) {
+        queue.add(new ScheduledTask(System.nanoTime() + unit.toNanos(delay), sequence++, task));
+    }
+
+    /**
+     * 执行所有已经到期的任务
+     */
+    void runDue(long now) {
+        ScheduledTask next;
+        while ((next = queue.peek()) != null && next.deadline - now <= 0) {
+            queue.poll();
+            try{
+                next.task.run();
+            }catch(Exception e){
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 结合已有的 select 超时（0 表示一直阻塞），返回不晚于最早任务到期的超时毫秒数
+     */
+    long nextTimeoutMillis(long now, long timeoutMillis) {
+        ScheduledTask next = queue.peek();
+        if (next == null) {
+            return timeoutMillis;
+        }
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.deadline - now + 999_999));
+        return timeoutMillis == 0 ? millis : Math.min(timeoutMillis, millis);
+    }
+
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        final long deadline;
+        final long sequence;
+        final Runnable task;
+
+        ScheduledTask(long deadline, long sequence, Runnable task) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask o) {
+            long diff = deadline - o.deadline;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
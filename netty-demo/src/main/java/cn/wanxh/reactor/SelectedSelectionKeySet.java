@@ -0,0 +1,76 @@
+package cn.wanxh.reactor;
+
+import java.nio.channels.SelectionKey;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 16:20
+ * @Author: 阿左不是蜗牛
+ * @Description: 数组实现的就绪 key 集合，替换 Selector 内部的 HashSet
+ *  select() 时 JDK 只调用 add()，Reactor 线程按下标遍历，不需要哈希也不创建 Iterator；
+ *  同一轮 select() 中一个通道只会被加入一次，所以 contains()/remove() 直接返回 false
+ */
+final class SelectedSelectionKeySet extends AbstractSet<SelectionKey> {
+
+    SelectionKey[] keys = new SelectionKey[1024];
+    int size;
+
+    @Override
+    public boolean add(SelectionKey key) {
+        if (key == null) {
+            return false;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+        }
+        keys[size++] = key;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            private int idx;
+
+            @Override
+            public boolean hasNext() {
+                return idx < size;
+            }
+
+            @Override
+            public SelectionKey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys[idx++];
+            }
+        };
+    }
+
+    /**
+     * 清空集合，释放对 key 的引用
+     */
+    void reset() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+}
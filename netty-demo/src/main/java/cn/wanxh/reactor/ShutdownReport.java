@@ -0,0 +1,41 @@
+package cn.wanxh.reactor;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 20:40
+ * @Author: 阿左不是蜗牛
+ * @Description: 优雅关闭的结果
+ *  drained：开始关闭时在线、在期限内处理完已读取的请求并写完响应后关闭（或由客户端自行关闭）的连接数；
+ *  forced：期限到达时仍未排空、被强制关闭的连接数
+ */
+public class ShutdownReport {
+
+    private final int drained;
+    private final int forced;
+    private final long elapsedMillis;
+
+    public ShutdownReport(int drained, int forced, long elapsedMillis) {
+        this.drained = drained;
+        this.forced = forced;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getDrained() {
+        return drained;
+    }
+
+    public int getForced() {
+        return forced;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownReport(drained: " + drained
+                + ", forced: " + forced
+                + ", elapsed: " + elapsedMillis + " ms)";
+    }
+}
@@ -0,0 +1,219 @@
+package cn.wanxh.reactor;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: netty-wanxh
+ * @Date: 2026/10/17 15:30
+ * @Author: 阿左不是蜗牛
+ * @Description: 业务线程池，MultiThreadHandler 的业务处理在这里执行
+ *  VIRTUAL：每次处理一个虚拟线程（JDK 21+），业务中的阻塞调用（JDBC、读文件）不会占住平台线程；
+ *  PLATFORM：有界的平台线程池，队列满后按拒绝策略处理；
+ *  AUTO：JVM 支持虚拟线程时使用 VIRTUAL，否则退化为 PLATFORM。
+ *  两种模式都限制排队 + 执行中的任务数，超出后拒绝，并统计队列深度。
+ *
+ *  默认配置可以通过系统属性调整：
+ *    -Dreactor.workPool.mode=auto|virtual|platform
+ *    -Dreactor.workPool.threads=平台线程数
+ *    -Dreactor.workPool.queueSize=队列容量
+ */
+public class WorkPool implements Executor {
+
+    public enum Mode { AUTO, VIRTUAL, PLATFORM }
+
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    private final ExecutorService executor;
+
+    // 平台线程池，虚拟线程模式下为 null
+    private final ThreadPoolExecutor platformPool;
+
+    private final boolean virtual;
+
+    // 虚拟线程模式下允许的最大任务数（排队 + 执行中）
+    private final int maxPending;
+
+    private final AtomicInteger pending = new AtomicInteger();   // 已提交未完成的任务数
+    private final AtomicInteger maxPendingSeen = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param mode 执行模式
+     * @param threads 平台线程数（仅 PLATFORM 模式）
+     * @param queueSize 平台线程池的队列容量；虚拟线程模式下限制 threads + queueSize 个未完成任务
+     * @param rejectedHandler 平台线程池的拒绝策略，为 null 时使用 AbortPolicy；
+     *                        策略必须执行任务或抛出 RejectedExecutionException，丢弃任务会让连接停在 PROCESSING 状态
+     */
+    public WorkPool(Mode mode, int threads, int queueSize, RejectedExecutionHandler rejectedHandler) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads + " (expected: > 0)");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize: " + queueSize + " (expected: > 0)");
+        }
+        ExecutorService virtualExecutor = mode == Mode.PLATFORM ? null : newVirtualThreadExecutor();
+        if (mode == Mode.VIRTUAL && virtualExecutor == null) {
+            throw new IllegalStateException("virtual threads are not supported by this JVM");
+        }
+
+        this.maxPending = threads + queueSize;
+        this.virtual = virtualExecutor != null;
+        if (virtual) {
+            this.executor = virtualExecutor;
+            this.platformPool = null;
+        } else {
+            this.platformPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), new NamedThreadFactory("workPool-"),
+                    rejectedHandler != null ? rejectedHandler : new ThreadPoolExecutor.AbortPolicy());
+            this.executor = platformPool;
+        }
+    }
+
+    public static WorkPool fromSystemProperties() {
+        Mode mode = Mode.valueOf(System.getProperty("reactor.workPool.mode", "auto").toUpperCase(Locale.ROOT));
+        int threads = Integer.getInteger("reactor.workPool.threads", DEFAULT_THREADS);
+        int queueSize = Integer.getInteger("reactor.workPool.queueSize", DEFAULT_QUEUE_SIZE);
+        return new WorkPool(mode, threads, queueSize, null);
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器，编译目标仍然是 Java 8；不支持时返回 null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try{
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }catch(Throwable t){
+            // JDK 21 以下没有该方法，JDK 19/20 未开启 --enable-preview 时会抛出 UnsupportedOperationException
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        int current = pending.incrementAndGet();
+        if (virtual && current > maxPending) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("work pool is full, pending tasks: " + maxPending);
+        }
+        updateMaxPending(current);
+        try{
+            executor.execute(() -> {
+                try{
+                    task.run();
+                }finally {
+                    pending.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            });
+        }catch(RejectedExecutionException e){
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private void updateMaxPending(int current) {
+        int max;
+        while (current > (max = maxPendingSeen.get())) {
+            if (maxPendingSeen.compareAndSet(max, current)) {
+                return;
+            }
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * 不再接收新任务，已提交的任务继续执行
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 中断正在执行的任务，丢弃排队的任务
+     */
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * shutdown() 之后等待已提交的任务执行完毕
+     * @return 超时前全部执行完毕返回 true
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 排队等待执行的任务数；虚拟线程模式下没有排队，返回 0
+     */
+    public int queueDepth() {
+        return platformPool != null ? platformPool.getQueue().size() : 0;
+    }
+
+    /**
+     * 已提交但尚未完成的任务数（排队 + 执行中）
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    public int maxPending() {
+        return maxPendingSeen.get();
+    }
+
+    public long completed() {
+        return completed.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkPool(" + (virtual ? "virtual" : "platform")
+                + ", queueDepth: " + queueDepth()
+                + ", pending: " + pending()
+                + ", maxPending: " + maxPending()
+                + ", completed: " + completed()
+                + ", rejected: " + rejected() + ')';
+    }
+
+    static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger index = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + index.getAndIncrement());
+        }
+    }
+}